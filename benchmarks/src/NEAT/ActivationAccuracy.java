@@ -0,0 +1,37 @@
+package NEAT;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Largest absolute and relative error of every {@link Activation.Approximate} kernel against its exact
+ * counterpart, over random arguments in a few ranges. Run with {@code gradle :benchmarks:activationAccuracy}.
+ */
+public class ActivationAccuracy {
+    private static final int SAMPLES = 10_000_000;
+    private static final double[] RANGES = {1, 10, 100, 1e5};
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(Genomes.SEED);
+        System.out.printf(Locale.ROOT, "%-8s %10s %14s %14s%n", "kernel", "|x| <=", "max abs error", "max rel error");
+        for (Activation.Approximate approximate : Activation.Approximate.values()) {
+            Activation exact = Activation.Exact.valueOf(approximate.name());
+            for (double range : RANGES) {
+                double absolute = 0, relative = 0;
+                for (int i = 0; i < SAMPLES; i++) {
+                    double x = random.nextDouble(-range, range);
+                    double expected = exact.apply(x), error = Math.abs(approximate.apply(x) - expected);
+                    absolute = Math.max(absolute, error);
+                    if (Math.abs(expected) > 1e-3) relative = Math.max(relative, error / Math.abs(expected));
+                }
+                System.out.printf(Locale.ROOT, "%-8s %10.0e %14.3e %14.3e%n", approximate.name().toLowerCase(Locale.ROOT), range, absolute, relative);
+            }
+        }
+        double exp = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = random.nextDouble(-700, 700), expected = Math.exp(x);
+            exp = Math.max(exp, Math.abs(Activation.Approximate.exp(x) - expected) / expected);
+        }
+        System.out.printf(Locale.ROOT, "%-8s %10.0e %14s %14.3e%n", "exp", 700d, "-", exp);
+    }
+}
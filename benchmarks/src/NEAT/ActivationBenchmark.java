@@ -0,0 +1,51 @@
+package NEAT;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of every activation kernel in exact and approximate mode, over a block of arguments
+ * spread like the weighted sums a network produces. {@link ActivationAccuracy} reports the matching errors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ActivationBenchmark {
+    private static final int SAMPLES = 1024;
+
+    @Param({"0", "3", "5", "6"})
+    public int function;
+    @Param({"false", "true"})
+    public boolean approximate;
+
+    private Activation kernel;
+    private final double[] arguments = new double[SAMPLES];
+    private final double[] block = new double[SAMPLES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.kernel = Activation.of(this.function, this.approximate);
+        SplittableRandom random = new SplittableRandom(Genomes.SEED);
+        for (int s = 0; s < SAMPLES; s++) this.arguments[s] = random.nextDouble(-8, 8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double scalar() {
+        double sum = 0;
+        for (double x : this.arguments) sum += this.kernel.apply(x);
+        return sum;
+    }
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[] batch() {
+        System.arraycopy(this.arguments, 0, this.block, 0, SAMPLES);
+        this.kernel.apply(0.5, this.block, SAMPLES);
+        return this.block;
+    }
+}
@@ -0,0 +1,38 @@
+package NEAT;
+
+import java.util.SplittableRandom;
+
+/** Deterministic genomes and populations shared by the benchmarks. */
+final class Genomes {
+    static final long SEED = 42;
+
+    private Genomes() {
+    }
+
+    /** A network with {@code hiddenNodes} hidden nodes, grown by structural mutations only. */
+    static NeuralNetwork grow(int numInputs, int numOutputs, int hiddenNodes, InnovationRegistry innovations, SplittableRandom random) {
+        NeuralNetwork network = NeuralNetwork.createNetwork(numInputs, numOutputs, innovations, random);
+        while (network.nodes().size() < numInputs + numOutputs + hiddenNodes) {
+            network.addNode(random);
+            network.addConnection(random);
+        }
+        network.generateNetwork();
+        return network;
+    }
+
+    /**
+     * A population evolved for {@code generations} generations and evaluated, ready for selection. It has
+     * no fitness cache, benchmarks evaluate the same genomes over and over and would only measure lookups.
+     */
+    static Population evolve(int generations, EvaluationEngine engine) {
+        Population population = new Population(2, 1, SEED);
+        population.setFitnessCache(null);
+        population.setEvaluationEngine(engine);
+        for (int g = 0; g < generations; g++) {
+            population.evaluate();
+            population.naturalSelection();
+        }
+        population.evaluate();
+        return population;
+    }
+}
@@ -0,0 +1,95 @@
+package NEAT;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dneat.seed=42")
+public class NetworkBenchmark {
+    private static final int SAMPLES = 1000;
+
+    @Param({"0", "10", "50", "500"})
+    public int hiddenNodes;
+
+    private NeuralNetwork network;
+    private NeuralNetwork partner;
+    private CompiledNetwork compiled;
+    private SplittableRandom random;
+    private final double[] input = new double[2];
+    private final double[] output = new double[1];
+    private final double[][] inputs = new double[2][SAMPLES];
+    private final double[][] outputs = new double[1][SAMPLES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InnovationRegistry innovations = new InnovationRegistry();
+        SplittableRandom random = new SplittableRandom(Genomes.SEED);
+        this.network = Genomes.grow(2, 1, this.hiddenNodes, innovations, random);
+        this.partner = Genomes.grow(2, 1, this.hiddenNodes, innovations, random);
+        for (int s = 0; s < SAMPLES; s++) {
+            this.inputs[0][s] = random.nextDouble() * Math.PI * 4;
+            this.inputs[1][s] = random.nextDouble();
+        }
+        this.input[0] = this.inputs[0][0];
+        this.input[1] = this.inputs[1][0];
+        this.compiled = CompiledNetwork.of(this.network);
+    }
+    @Setup(Level.Iteration)
+    public void resetRandom() {
+        this.random = new SplittableRandom(Genomes.SEED);
+    }
+
+    @State(Scope.Thread)
+    public static class Mutant {
+        private NeuralNetwork network;
+
+        @Setup(Level.Invocation)
+        public void copy(NetworkBenchmark benchmark) {
+            // mutate() changes the genome in place, start every invocation from the same genome
+            this.network = benchmark.network.crossover(benchmark.network, benchmark.random);
+        }
+    }
+
+    @Benchmark
+    public double[] feedforward() {
+        this.network.feedforward(this.input, this.output);
+        return this.output;
+    }
+    @Benchmark
+    public double[] feedforwardCompiled() {
+        this.compiled.feedforward(this.input, this.output);
+        return this.output;
+    }
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[][] feedforwardBatch() {
+        this.network.feedforward(this.inputs, SAMPLES, this.outputs);
+        return this.outputs;
+    }
+    @Benchmark
+    public Phenotype compile() {
+        return Phenotype.compile(this.network);
+    }
+    @Benchmark
+    public NeuralNetwork addNode(Mutant mutant) {
+        // the appended node is put in layer order by the reorder that follows every mutation
+        mutant.network.addNode(this.random);
+        mutant.network.generateNetwork();
+        return mutant.network;
+    }
+    @Benchmark
+    public NeuralNetwork mutate(Mutant mutant) {
+        mutant.network.mutate(this.random);
+        return mutant.network;
+    }
+    @Benchmark
+    public NeuralNetwork crossover() {
+        return this.network.crossover(this.partner, this.random);
+    }
+}
@@ -0,0 +1,66 @@
+package NEAT;
+
+import NEAT.Example.Classification;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Dneat.seed=42")
+public class PopulationBenchmark {
+    private static final int GENERATIONS = 30;
+
+    @Param({"sequential", "forkjoin"})
+    public String evaluation;
+
+    private Population population;
+    private Individual[] evaluated;
+    private int generation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        new Classification().initPoints();
+        this.population = Genomes.evolve(GENERATIONS, this.evaluation.equals("sequential") ?
+                EvaluationEngine.sequential() : EvaluationEngine.forkJoin());
+        this.evaluated = Arrays.stream(this.population.players()).map(Individual::copy).toArray(Individual[]::new);
+        this.generation = this.population.generation;
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.population.close();
+    }
+    @Setup(Level.Invocation)
+    public void restore() {
+        // naturalSelection breeds into recycled individuals, copy the evaluated generation back
+        Individual[] players = this.population.players();
+        for (int i = 0; i < players.length; i++) players[i].copyFrom(this.evaluated[i]);
+        this.population.generation = this.generation;
+    }
+
+    @Benchmark
+    public Population evaluateAll() {
+        this.population.evaluate();
+        return this.population;
+    }
+    @Benchmark
+    public Population fillMatingPool() {
+        this.population.fillMatingPool();
+        return this.population;
+    }
+    @Benchmark
+    public Population naturalSelection() {
+        this.population.naturalSelection();
+        return this.population;
+    }
+    @Benchmark
+    public Population generation() {
+        this.population.evaluate();
+        this.population.naturalSelection();
+        return this.population;
+    }
+}
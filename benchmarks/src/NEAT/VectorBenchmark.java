@@ -0,0 +1,39 @@
+package NEAT;
+
+import NEAT.Example.Classification;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Batch evaluation of the classification data set with every {@link Phenotype.Backend}, in ns per sample. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class VectorBenchmark {
+    @Param({"0", "10", "50"})
+    public int hiddenNodes;
+    @Param({"SCALAR", "VECTOR", "VECTOR_FLOAT"})
+    public Phenotype.Backend backend;
+
+    private Phenotype phenotype;
+    private final double[][] outputs = new double[1][Classification.NUM_POINTS];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        new Classification(Genomes.SEED).initPoints();
+        NeuralNetwork network = Genomes.grow(2, 1, this.hiddenNodes, new InnovationRegistry(), new SplittableRandom(Genomes.SEED));
+        this.phenotype = Phenotype.compile(network, false, this.backend);
+        if (this.phenotype.backend() != this.backend) throw new IllegalStateException(this.backend + " is not available");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Classification.NUM_POINTS)
+    public double[][] feedforwardBatch() {
+        this.phenotype.feedforward(Classification.inputs, Classification.NUM_POINTS, this.outputs);
+        return this.outputs;
+    }
+}
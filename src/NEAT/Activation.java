@@ -0,0 +1,167 @@
+package NEAT;
+
+/**
+ * Activation functions, one kernel per function so a {@link Phenotype} resolves them once per node
+ * and the evaluation loops never switch on the function id. Kernels are indexed by the id a
+ * {@link NeuralNetwork.Node} stores: 0 sigmoid, 1 identity, 2 step, 3 tanh, 4 relu, 5 sin, 6 cos.
+ * <p>
+ * {@link Approximate} kernels trade the last bits for speed and are used when the JVM runs with
+ * {@code -Dneat.math=approximate}.
+ */
+public interface Activation {
+    boolean APPROXIMATE = "approximate".equals(System.getProperty("neat.math"));
+
+    double apply(double x);
+    /** {@code x[s] = apply(x[s] + bias)} for the first {@code len} values. */
+    void apply(double bias, double[] x, int len);
+
+    static Activation of(int activationFunction) {
+        return of(activationFunction, APPROXIMATE);
+    }
+    static Activation of(int activationFunction, boolean approximate) {
+        Exact exact = Exact.VALUES[activationFunction < 0 || activationFunction >= Exact.VALUES.length ? 0 : activationFunction];
+        if (!approximate) return exact;
+        return switch (exact) {
+            case TANH -> Approximate.TANH;
+            case SIN -> Approximate.SIN;
+            case COS -> Approximate.COS;
+            default -> exact;
+        };
+    }
+
+    enum Exact implements Activation {
+        SIGMOID {
+            @Override public double apply(double x) {
+                return 1 / (1 + Math.exp(-4.9 * x));
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = 1 / (1 + Math.exp(-4.9 * (x[s] + bias)));
+            }
+        },
+        IDENTITY {
+            @Override public double apply(double x) {
+                return x;
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = x[s] + bias;
+            }
+        },
+        STEP {
+            @Override public double apply(double x) {
+                return x > 0 ? 1 : 0;
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = x[s] + bias > 0 ? 1 : 0;
+            }
+        },
+        TANH {
+            @Override public double apply(double x) {
+                return Math.tanh(x);
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = Math.tanh(x[s] + bias);
+            }
+        },
+        RELU {
+            @Override public double apply(double x) {
+                return x < 0 ? 0 : x;
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = x[s] + bias < 0 ? 0 : x[s] + bias;
+            }
+        },
+        SIN {
+            @Override public double apply(double x) {
+                return Math.sin(x);
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = Math.sin(x[s] + bias);
+            }
+        },
+        COS {
+            @Override public double apply(double x) {
+                return Math.cos(x);
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = Math.cos(x[s] + bias);
+            }
+        };
+
+        private static final Exact[] VALUES = values();
+    }
+
+    /**
+     * Polynomial approximations built on a range reduced {@link #exp}. Maximum absolute error against
+     * {@link Exact}, measured by {@code ActivationAccuracy} in the benchmarks module:
+     * <ul>
+     *     <li>tanh: below 2e-10</li>
+     *     <li>sin and cos: below 1e-9 for {@code |x| <= 1e5}, beyond that they fall back to {@link Math}</li>
+     * </ul>
+     * There is no sigmoid: a single {@link #exp} is no faster than the {@link Math#exp} intrinsic, so the
+     * sigmoid stays exact in approximate mode.
+     */
+    enum Approximate implements Activation {
+        TANH {
+            @Override public double apply(double x) {
+                return tanh(x);
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = tanh(x[s] + bias);
+            }
+        },
+        SIN {
+            @Override public double apply(double x) {
+                return sin(x);
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = sin(x[s] + bias);
+            }
+        },
+        COS {
+            @Override public double apply(double x) {
+                return cos(x);
+            }
+            @Override public void apply(double bias, double[] x, int len) {
+                for (int s = 0; s < len; s++) x[s] = cos(x[s] + bias);
+            }
+        };
+
+        private static final double LOG2E = 1.4426950408889634;
+        private static final double LN2_HI = 0.6931471803691238;
+        private static final double LN2_LO = 1.9082149292705877e-10;
+        private static final double INV_PI = 1 / Math.PI;
+        private static final double PI_HI = 3.141592653589793;
+        private static final double PI_LO = 1.2246467991473532e-16;
+
+        /** e^x as 2^k * e^r with {@code |r| <= ln2 / 2}, degree 8 Taylor polynomial for e^r, relative error below 3e-10. */
+        public static double exp(double x) {
+            if (x < -708) return 0;
+            if (x > 709) return Double.POSITIVE_INFINITY;
+            double k = Math.rint(x * LOG2E);
+            double r = (x - k * LN2_HI) - k * LN2_LO;
+            double p = 1 + r * (1 + r * (1 / 2d + r * (1 / 6d + r * (1 / 24d + r * (1 / 120d + r * (1 / 720d + r * (1 / 5040d + r / 40320d)))))));
+            return p * Double.longBitsToDouble((long) (k + 1023) << 52);
+        }
+        public static double tanh(double x) {
+            if (x > 20) return 1;
+            if (x < -20) return -1;
+            return 1 - 2 / (exp(2 * x) + 1);
+        }
+        /** sin x as (-1)^k sin r with {@code x = k pi + r}, odd polynomial up to r^13. */
+        public static double sin(double x) {
+            if (Math.abs(x) > 1e5) return Math.sin(x);
+            double k = Math.rint(x * INV_PI);
+            double r = (x - k * PI_HI) - k * PI_LO, r2 = r * r;
+            double s = r * (1 + r2 * (-1 / 6d + r2 * (1 / 120d + r2 * (-1 / 5040d + r2 * (1 / 362880d + r2 * (-1 / 39916800d + r2 / 6227020800d))))));
+            return ((long) k & 1) == 0 ? s : -s;
+        }
+        /** cos x as (-1)^k cos r with {@code x = k pi + r}, even polynomial up to r^14. */
+        public static double cos(double x) {
+            if (Math.abs(x) > 1e5) return Math.cos(x);
+            double k = Math.rint(x * INV_PI);
+            double r = (x - k * PI_HI) - k * PI_LO, r2 = r * r;
+            double c = 1 + r2 * (-1 / 2d + r2 * (1 / 24d + r2 * (-1 / 720d + r2 * (1 / 40320d + r2 * (-1 / 3628800d + r2 * (1 / 479001600d + r2 / -87178291200d))))));
+            return ((long) k & 1) == 0 ? c : -c;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package NEAT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Island model: independent populations, each bred by its own thread, that send copies of their best
+ * individuals to their neighbours every {@code interval} generations. Migrants travel through lock free
+ * queues and are picked up at the start of the receiver's next generation, so islands never wait on
+ * each other. They replace the last children bred, which are as random as any others.
+ * <p>
+ * Runs are not reproducible, even without migration: islands draw innovation numbers from one shared
+ * registry in whatever order their threads get there, and those numbers order the genes of a genome and
+ * tell excess from disjoint genes in speciation. When a migrant arrives depends on thread timing as well.
+ */
+public final class Archipelago implements AutoCloseable {
+    private final Population[] islands;
+    private final List<ConcurrentLinkedQueue<Individual>> inboxes;
+    private final Topology topology;
+    private final int interval;
+    private final int migrants;
+    private final AtomicLong migrations = new AtomicLong();
+    private volatile boolean stopped;
+
+    public enum Topology {
+        /** Island {@code i} sends to island {@code i + 1}. */
+        RING,
+        /** Every island sends to every other island. */
+        FULL
+    }
+
+    /**
+     * Islands share one innovation registry so migrants line up with their hosts in crossover, and
+     * evaluate sequentially on their own thread.
+     *
+     * @param configure applied to every island after it is created, e.g. to set its speciation
+     */
+    public Archipelago(int islands, int numInputs, int numOutputs, long seed, Topology topology, int interval, int migrants, Consumer<Population> configure) {
+        InnovationRegistry innovations = new InnovationRegistry();
+        this.islands = new Population[islands];
+        this.inboxes = new ArrayList<>(islands);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int i = 0; i < islands; i++) {
+            this.islands[i] = new Population(numInputs, numOutputs, seeds.nextLong(), innovations);
+            this.islands[i].setEvaluationEngine(EvaluationEngine.sequential());
+            configure.accept(this.islands[i]);
+            this.inboxes.add(new ConcurrentLinkedQueue<>());
+        }
+        this.topology = topology;
+        this.interval = interval;
+        this.migrants = migrants;
+    }
+
+    /** Breeds {@code generations} more generations on every island and returns once all of them are done. */
+    public void run(int generations) {
+        this.stopped = false;
+        ExecutorService executor = Executors.newFixedThreadPool(this.islands.length, r -> {
+            Thread thread = new Thread(r, "neat-island");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> pending = new ArrayList<>(this.islands.length);
+            for (int i = 0; i < this.islands.length; i++) {
+                int island = i;
+                pending.add(executor.submit(() -> this.evolve(island, generations)));
+            }
+            for (Future<?> f : pending) f.get();
+        } catch (InterruptedException e) {
+            this.stopped = true;
+            Thread.currentThread().interrupt();
+            throw new CancellationException("evolution interrupted");
+        } catch (ExecutionException e) {
+            this.stopped = true;
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    /** Lets every island finish the generation it is breeding, then makes {@link #run} return. */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    private void evolve(int island, int generations) {
+        Population population = this.islands[island];
+        ConcurrentLinkedQueue<Individual> inbox = this.inboxes.get(island);
+        Individual[] players = population.players();
+        for (int g = 0; g < generations && !this.stopped; g++) {
+            int slot = players.length;
+            for (Individual migrant; slot > 0 && (migrant = inbox.poll()) != null; ) players[--slot] = migrant;
+            population.evaluate();
+            if ((population.generation + 1) % this.interval == 0) this.emigrate(island, players);
+            population.naturalSelection();
+        }
+    }
+    private void emigrate(int island, Individual[] players) {
+        Individual[] best = Arrays.copyOf(players, players.length);
+        Arrays.sort(best, Comparator.comparingDouble(Individual::fitness).reversed());
+        int n = this.islands.length;
+        for (int target = 0; target < n; target++) {
+            if (target == island) continue;
+            if (this.topology == Topology.RING && target != (island + 1) % n) continue;
+            ConcurrentLinkedQueue<Individual> inbox = this.inboxes.get(target);
+            for (int k = 0; k < Math.min(this.migrants, best.length); k++) inbox.offer(best[k].copy());
+            this.migrations.addAndGet(Math.min(this.migrants, best.length));
+        }
+    }
+
+    public Population[] islands() {
+        return this.islands;
+    }
+    public Individual best() {
+        Individual best = null;
+        for (Population island : this.islands) {
+            Individual candidate = island.bestPlayer();
+            if (best == null || candidate.fitness() > best.fitness()) best = candidate;
+        }
+        return best;
+    }
+    public double bestFitness() {
+        double best = 0;
+        for (Population island : this.islands) best = Math.max(best, island.bestFitness);
+        return best;
+    }
+    /** Individuals sent so far. */
+    public long migrations() {
+        return this.migrations.get();
+    }
+    /** Closes every island. */
+    @Override public void close() {
+        for (Population island : this.islands) island.close();
+    }
+}
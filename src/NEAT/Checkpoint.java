@@ -0,0 +1,79 @@
+package NEAT;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a whole {@link Population} between two generations and brings it back, so a resumed run breeds
+ * exactly the generations the interrupted one would have.
+ * <pre>
+ * file := "NEAT" version genomeVersion population crc32
+ * </pre>
+ * The population is encoded on the calling thread, which takes a few milliseconds, then written to a
+ * temporary file and moved over the previous checkpoint on a background thread, so a crash while writing
+ * never leaves a truncated checkpoint behind.
+ */
+public final class Checkpoint {
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x4E454154;
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "neat-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Checkpoint() {
+    }
+
+    public static CompletableFuture<Path> save(Population population, Path file) {
+        GenomeCodec.Output out = new GenomeCodec.Output(1 << 16);
+        out.int32(MAGIC);
+        out.varint(VERSION);
+        out.varint(GenomeCodec.VERSION);
+        population.write(out);
+        CRC32 crc = new CRC32();
+        crc.update(out.buffer());
+        out.int32((int) crc.getValue());
+        ByteBuffer bytes = out.buffer();
+        return CompletableFuture.supplyAsync(() -> {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (bytes.hasRemaining()) channel.write(bytes);
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try {
+                return Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, WRITER);
+    }
+
+    public static Population load(Path file) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.limit() < 8 || in.getInt() != MAGIC) throw new IOException(file + " is not a checkpoint");
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate().position(0).limit(in.limit() - 4));
+        if ((int) crc.getValue() != in.getInt(in.limit() - 4)) throw new IOException(file + " is corrupted");
+        int version = (int) GenomeCodec.varint(in), genomeVersion = (int) GenomeCodec.varint(in);
+        if (version != VERSION || genomeVersion != GenomeCodec.VERSION)
+            throw new IOException("unsupported checkpoint version " + version + "." + genomeVersion);
+        return Population.read(in);
+    }
+}
@@ -0,0 +1,47 @@
+package NEAT;
+
+/** Data set held on the heap as one array per feature. The arrays are used as they are, not copied. */
+public final class ColumnarDataset implements Dataset {
+    private final double[][] columns;
+    private final int[] labels;
+
+    /** @param columns {@code columns[feature][sample]}, every column as long as {@code labels} */
+    public ColumnarDataset(double[][] columns, int[] labels) {
+        for (double[] column : columns)
+            if (column.length != labels.length) throw new IllegalArgumentException("columns of " + column.length + " samples for " + labels.length + " labels");
+        this.columns = columns;
+        this.labels = labels;
+    }
+
+    /** Reads {@code data} whole onto the heap. */
+    public static ColumnarDataset copyOf(Dataset data) {
+        if (data instanceof ColumnarDataset columnar) return columnar;
+        double[][] columns = new double[data.features()][data.size()], chunk = new double[data.features()][Dataset.CHUNK];
+        int[] labels = new int[data.size()], buffer = new int[Dataset.CHUNK];
+        for (int from = 0; from < data.size(); from += Dataset.CHUNK) {
+            int count = Math.min(Dataset.CHUNK, data.size() - from);
+            data.read(from, count, chunk, buffer);
+            for (int f = 0; f < columns.length; f++) System.arraycopy(chunk[f], 0, columns[f], from, count);
+            System.arraycopy(buffer, 0, labels, from, count);
+        }
+        return new ColumnarDataset(columns, labels);
+    }
+
+    @Override public int features() {
+        return this.columns.length;
+    }
+    @Override public int size() {
+        return this.labels.length;
+    }
+    @Override public void read(int from, int count, double[][] inputs, int[] labels) {
+        for (int f = 0; f < this.columns.length; f++) System.arraycopy(this.columns[f], from, inputs[f], 0, count);
+        System.arraycopy(this.labels, from, labels, 0, count);
+    }
+
+    double[][] columns() {
+        return this.columns;
+    }
+    int[] labels() {
+        return this.labels;
+    }
+}
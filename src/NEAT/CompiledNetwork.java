@@ -0,0 +1,25 @@
+package NEAT;
+
+/**
+ * A network compiled into straight line code: every weight and bias is a constant, every node a local
+ * variable and every activation written out, so the JIT can inline and register allocate the whole network.
+ * Big networks are split into methods small enough for the JIT to compile, passing values on in an array.
+ * Outputs are the same to the last bit as {@link NeuralNetwork#feedforward(double[])} with the scalar backend.
+ * <p>
+ * The source is compiled with {@code javax.tools}, which needs a JDK at run time, and defined as a hidden
+ * class that is unloaded with its last instance. {@link #source} writes the same class as Java source to
+ * include in a build instead.
+ */
+public interface CompiledNetwork {
+    double[] feedforward(double[] input);
+    void feedforward(double[] input, double[] output);
+
+    /** Compiles the network as it is now, later changes to the genome are not reflected. */
+    static CompiledNetwork of(NeuralNetwork network) {
+        return NetworkCompiler.compile(network);
+    }
+    /** @param className fully qualified name of the class implementing {@link CompiledNetwork} */
+    static String source(NeuralNetwork network, String className) {
+        return NetworkCompiler.source(Phenotype.compile(network, Activation.APPROXIMATE, Phenotype.Backend.SCALAR), className);
+    }
+}
@@ -0,0 +1,23 @@
+package NEAT;
+
+/**
+ * Labelled samples individuals are evaluated on. Samples are read in chunks of at most {@link #CHUNK},
+ * column by column, into buffers of the evaluating thread, so evaluation needs the same memory whether
+ * a data set holds a thousand samples or millions, in memory ({@link ColumnarDataset}) or in a file
+ * ({@link MappedDataset}).
+ * <p>
+ * A sample is classified {@code output >= 0 ? 1 : 0} by the first output node and fitness is the share
+ * of samples classified as labelled. Implementations must allow concurrent reads.
+ */
+public interface Dataset {
+    /** Samples per chunk, a multiple of the phenotype's block of samples. */
+    int CHUNK = 4096;
+
+    int features();
+    int size();
+    /**
+     * Copies samples {@code [from, from + count)} into {@code inputs[feature][0, count)} and
+     * {@code labels[0, count)}, {@code count} is at most {@link #CHUNK}.
+     */
+    void read(int from, int count, double[][] inputs, int[] labels);
+}
@@ -0,0 +1,142 @@
+package NEAT;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+public interface EvaluationEngine {
+
+    void evaluate(Individual[] individuals);
+    /** Evaluates the first {@code count} individuals, engines override it to do so without copying them. */
+    default void evaluate(Individual[] individuals, int count) {
+        this.evaluate(count == individuals.length ? individuals : Arrays.copyOf(individuals, count));
+    }
+    /**
+     * Called with every child as soon as it is bred, before the generation is complete. Engines that
+     * can evaluate in the background start on it right away, {@link #evaluate} then only waits for it.
+     */
+    default void prefetch(Individual individual) {
+    }
+
+    static EvaluationEngine sequential() {
+        return new Sequential();
+    }
+    static EvaluationEngine forkJoin() {
+        return new ForkJoin(ForkJoinPool.commonPool());
+    }
+    static EvaluationEngine forkJoin(ForkJoinPool pool) {
+        return new ForkJoin(pool);
+    }
+    static EvaluationEngine virtualThreads() {
+        return VirtualThreads.FACTORY == null ? forkJoin() : new VirtualThreads();
+    }
+
+    /**
+     * Engine selected by the {@code neat.evaluation} system property
+     * ({@code sequential}, {@code forkjoin} or {@code virtual}), fork-join by default.
+     * Run with {@code -Dneat.evaluation=sequential} to get the old single threaded behaviour back.
+     */
+    static EvaluationEngine fromProperty() {
+        return switch (System.getProperty("neat.evaluation", "forkjoin")) {
+            case "sequential" -> sequential();
+            case "virtual" -> virtualThreads();
+            default -> forkJoin();
+        };
+    }
+
+    final class Sequential implements EvaluationEngine {
+        @Override public void evaluate(Individual[] individuals) {
+            this.evaluate(individuals, individuals.length);
+        }
+        @Override public void evaluate(Individual[] individuals, int count) {
+            for (int i = 0; i < count; i++) individuals[i].evaluateAll();
+        }
+    }
+
+    final class ForkJoin implements EvaluationEngine {
+        private final ForkJoinPool pool;
+        private ForkJoin(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        @Override public void evaluate(Individual[] individuals) {
+            this.evaluate(individuals, individuals.length);
+        }
+        @Override public void evaluate(Individual[] individuals, int count) {
+            // genomes may differ in size by orders of magnitude, so ranges are split on
+            // accumulated cost rather than on individual count
+            long[] cost = new long[count + 1];
+            for (int i = 0; i < count; i++)
+                cost[i + 1] = cost[i] + individuals[i].getBrain().calculateWeight();
+            long grain = Math.max(1, cost[count] / (this.pool.getParallelism() * 8L));
+            this.pool.invoke(new Range(individuals, cost, 0, count, grain));
+        }
+
+        // fork join tasks are never serialized
+        @SuppressWarnings("serial")
+        private static final class Range extends RecursiveAction {
+            private final Individual[] individuals;
+            private final long[] cost;
+            private final int from, to;
+            private final long grain;
+            private Range(Individual[] individuals, long[] cost, int from, int to, long grain) {
+                this.individuals = individuals;
+                this.cost = cost;
+                this.from = from;
+                this.to = to;
+                this.grain = grain;
+            }
+
+            @Override protected void compute() {
+                if (this.to - this.from <= 1 || this.cost[this.to] - this.cost[this.from] <= this.grain) {
+                    for (int i = this.from; i < this.to; i++) this.individuals[i].evaluateAll();
+                    return;
+                }
+                long half = (this.cost[this.from] + this.cost[this.to]) / 2;
+                int mid = this.from + 1;
+                while (mid < this.to - 1 && this.cost[mid] < half) mid++;
+                invokeAll(new Range(this.individuals, this.cost, this.from, mid, this.grain),
+                        new Range(this.individuals, this.cost, mid, this.to, this.grain));
+            }
+        }
+    }
+
+    final class VirtualThreads implements EvaluationEngine {
+        // resolved reflectively, virtual threads are not available on every supported JDK
+        private static final Method FACTORY = factory();
+        private static Method factory() {
+            try {
+                return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        @Override public void evaluate(Individual[] individuals) {
+            this.evaluate(individuals, individuals.length);
+        }
+        @Override public void evaluate(Individual[] individuals, int count) {
+            ExecutorService executor;
+            try {
+                executor = (ExecutorService) FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+            try {
+                List<Future<?>> pending = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) pending.add(executor.submit(individuals[i]::evaluateAll));
+                for (Future<?> f : pending) f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("evaluation interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException r) throw r;
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -1,64 +1,72 @@
 package NEAT.Example;
-import NEAT.Individual;
+import NEAT.ColumnarDataset;
+import NEAT.Dataset;
+import NEAT.InnovationRegistry;
 import NEAT.Population;
+import NEAT.Racing;
+import NEAT.Speciation;
 
-import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.util.Arrays;
+import java.util.SplittableRandom;
 import java.util.function.DoubleFunction;
 
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
-import static NEAT.Example.Visual.HEIGHT;
-import static NEAT.Example.Visual.WIDTH;
 
 public class Classification {
     public static final int NUM_POINTS = 1000;
     public static final Point[] points = new Point[NUM_POINTS];
+    public static final double[][] inputs = new double[2][NUM_POINTS];
+    public static final int[] labels = new int[NUM_POINTS];
+    /** The points as the data set individuals evaluate on unless their population has another one. */
+    public static final Dataset dataset = new ColumnarDataset(inputs, labels);
     private final Population population;
+    private final long seed;
     public static DoubleFunction<Double> myFunction = x -> .4 * sin(x) * .3 * cos(x) + 0.5;
     private boolean ready = false;
     public Classification() {
-        this.population = new Population(2,1);
+        this(Settings.SEED);
+    }
+    public Classification(long seed) {
+        this(seed, Population.NUM_INDIVIDUALS);
+    }
+    public Classification(long seed, int size) {
+        this(new Population(2,1,seed,size,new InnovationRegistry()));
+        this.population.setSpeciation(new Speciation());
+    }
+    /** Carries on with a population restored from a {@link NEAT.Checkpoint}. */
+    public Classification(Population population) {
+        this.seed = population.seed();
+        this.population = population;
     }
     public Population getPopulation() {
         return population;
     }
     public void initPoints() {
         if (ready) return;
+        generatePoints(this.seed);
+        ready = true;
+    }
+    /** Fills {@link #points}, {@link #inputs} and {@link #labels}, the same for the same seed. */
+    public static void generatePoints(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
         for (int i = 0; i< NUM_POINTS;i++) {
-            double y = Math.random(), x = Math.random() * Math.PI * 4;
+            double y = random.nextDouble(), x = random.nextDouble() * Math.PI * 4;
             int type = y > myFunction.apply(x) ? 1 : 0;
             points[i] = new Point(x, y,type);
+            inputs[0][i] = x;
+            inputs[1][i] = y;
+            labels[i] = type;
         }
-        ready = true;
     }
-    public void renderPoints(Graphics2D g) {
-        g.setColor(new Color(0, 0, 0));
-        g.fill3DRect(0, 0, Visual.WIDTH, Visual.HEIGHT, false);
-        g.setColor(Color.WHITE);
-        for (Point p : points) {
-            g.fill(new Ellipse2D.Double(
-                    map(p.x(), 0, Math.PI*4, 0, WIDTH)-5,
-                    p.y() * HEIGHT-5,
-                    10,
-                    10));
-        }
-
-        g.setColor(new Color(61, 61, 61));
-        for(int i = 0; i < WIDTH; i += 1) {
-            double x = map(i, 0, WIDTH, 0, Math.PI*4);
-            double y = myFunction.apply(x) * HEIGHT;
-            g.fill(new Ellipse2D.Double(i-5, y-5, 10,10));
-        }
-
+    /** Racing over the points, in batches of 100, stopping at 99.9% confidence below the median of the last generation. */
+    public Racing racing() {
+        return new Racing(inputs, labels, 100, 1e-3, 0.5, this.seed);
     }
     public static double map(double x, double inMin, double inMax, double outMin, double outMax){
         return (x - inMin) * (outMax - outMin) / (inMax - inMin) + outMin;
     }
-        public void evaluateAll() {
-        Arrays.stream(population.players()).forEach(Individual::evaluateAll);
-//        Arrays.stream(population.players()).forEach(Individual::evaluateRange);
+    public void evaluateAll() {
+        population.evaluate();
     }
 
     public static record Point(double x, double y, int label) {
@@ -0,0 +1,244 @@
+package NEAT.Example;
+
+import NEAT.Archipelago;
+import NEAT.Checkpoint;
+import NEAT.CompiledNetwork;
+import NEAT.Dataset;
+import NEAT.FitnessCache;
+import NEAT.Individual;
+import NEAT.InnovationRegistry;
+import NEAT.MappedDataset;
+import NEAT.Metrics;
+import NEAT.Phenotype;
+import NEAT.Population;
+import NEAT.Racing;
+import NEAT.RemoteEvaluationEngine;
+import NEAT.Speciation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the classification example without any window, generation after generation as fast as the
+ * hardware allows.
+ * <pre>
+ * java NEAT.Example.Headless [--generations N] [--target FITNESS] [--budget SECONDS] [--seed SEED] [--every N]
+ *                            [--checkpoint FILE] [--checkpoint-every N] [--resume FILE] [--racing]
+ *                            [--islands N] [--topology ring|full] [--migration-interval N] [--migrants N]
+ *                            [--workers N] [--port PORT] [--population N] [--data FILE] [--emit-source FILE]
+ * </pre>
+ * With {@code --checkpoint} the population is saved every {@code --checkpoint-every} generations (100 by
+ * default) and when the run stops, {@code --resume} carries on from a saved population.
+ * {@code --generations} counts from the start of the original run. {@code --racing} stops scoring
+ * individuals that cannot reach the median fitness of the previous generation, resumed with {@code --racing}
+ * it carries on with the threshold of the saved generation.
+ * With {@code --islands} several populations evolve on their own threads and exchange their best
+ * individuals, checkpoints are not supported in that mode. {@code --workers} evaluates on that many
+ * {@link Worker} processes started locally, {@code --port} waits for workers started by hand instead
+ * ({@code java NEAT.Example.Worker HOST PORT SEED}). {@code --population} sets the number of individuals
+ * of a new single population. {@code --data} evolves a classifier for a data set instead of the points: a
+ * {@link MappedDataset} file, or a CSV that is converted to one next to it the first time.
+ * {@code --emit-source} writes the champion as a {@link CompiledNetwork} in Java source when the run
+ * stops, in a class named after the file.
+ */
+public class Headless {
+
+    public static void main(String[] args) throws IOException {
+        long generations = Long.MAX_VALUE;
+        double target = 1;
+        double budget = Double.POSITIVE_INFINITY;
+        long seed = Settings.SEED;
+        int every = 10;
+        Path checkpoint = null, resume = null, file = null, source = null;
+        boolean racing = false;
+        int checkpointEvery = 100;
+        int islands = 1, migrationInterval = 10, migrants = 2, workers = 0, port = -1, size = Population.NUM_INDIVIDUALS;
+        Archipelago.Topology topology = Archipelago.Topology.RING;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--generations" -> generations = Long.parseLong(value);
+                case "--target" -> target = Double.parseDouble(value);
+                case "--budget" -> budget = Double.parseDouble(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--every" -> every = Integer.parseInt(value);
+                case "--checkpoint" -> checkpoint = Path.of(value);
+                case "--checkpoint-every" -> checkpointEvery = Integer.parseInt(value);
+                case "--resume" -> resume = Path.of(value);
+                case "--islands" -> islands = Integer.parseInt(value);
+                case "--topology" -> topology = Archipelago.Topology.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--migration-interval" -> migrationInterval = Integer.parseInt(value);
+                case "--migrants" -> migrants = Integer.parseInt(value);
+                case "--workers" -> workers = Integer.parseInt(value);
+                case "--port" -> port = Integer.parseInt(value);
+                case "--population" -> size = Integer.parseInt(value);
+                case "--data" -> file = Path.of(value);
+                case "--emit-source" -> source = Path.of(value);
+                case "--racing" -> {
+                    racing = true;
+                    continue;
+                }
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+            i++;
+        }
+
+        if (file != null && file.getFileName().toString().endsWith(".csv")) file = convert(file);
+        Dataset data = file == null ? null : MappedDataset.open(file);
+        if (islands > 1) {
+            Individual champion = islands(islands, topology, migrationInterval, migrants, racing, data, seed, generations, target, budget, every);
+            if (source != null) emit(champion, source);
+            return;
+        }
+        Classification classification = resume != null ? new Classification(Checkpoint.load(resume)) :
+                data == null ? new Classification(seed, size) : new Classification(new Population(data.features(), 1, seed, size, new InnovationRegistry()));
+        classification.initPoints();
+        Population population = classification.getPopulation();
+        if (data != null) {
+            if (resume == null) population.setSpeciation(new Speciation());
+            population.setDataset(data);
+        }
+        if (racing) population.setRacing(data == null ? classification.racing() : Racing.of(data, 100, 1e-3, 0.5, population.seed()));
+        LocalCluster cluster = null;
+        if (workers > 0 || port >= 0) {
+            RemoteEvaluationEngine remote = new RemoteEvaluationEngine(Math.max(0, port), 25);
+            population.setEvaluationEngine(remote);
+            if (workers > 0) cluster = new LocalCluster(workers, remote.port(), population.seed(), file);
+            System.out.printf(Locale.ROOT, "coordinator listening on port %d%n", remote.port());
+        }
+        System.out.printf(Locale.ROOT, "seed %d, %d individuals, %d points%n", population.seed(), population.players().length,
+                data == null ? Classification.NUM_POINTS : data.size());
+        int firstGeneration = population.generation;
+
+        long start = System.nanoTime(), windowStart = start, slowest = 0, slowestOverall = 0;
+        String reason;
+        // one checkpoint is written at a time, a failed write stops the run like the final one does
+        CompletableFuture<Path> saving = null;
+        while (true) {
+            long generationStart = System.nanoTime();
+            classification.evaluateAll();
+            population.naturalSelection();
+            long now = System.nanoTime(), last = now - generationStart;
+            slowest = Math.max(slowest, last);
+            slowestOverall = Math.max(slowestOverall, last);
+
+            if (population.generation % every == 0) {
+                print(population, last, (now - windowStart) / (double) every, slowest);
+                windowStart = now;
+                slowest = 0;
+            }
+            if (population.bestFitness >= target) reason = "target fitness reached";
+            else if (population.generation >= generations) reason = "generation limit reached";
+            else if ((now - start) / 1e9 >= budget) reason = "time budget exhausted";
+            else {
+                if (checkpoint != null && population.generation % checkpointEvery == 0) {
+                    if (saving != null) saving.join();
+                    saving = Checkpoint.save(population, checkpoint);
+                }
+                continue;
+            }
+
+            print(population, last, (now - start) / (double) (population.generation - firstGeneration), slowestOverall);
+            System.out.printf(Locale.ROOT, "%s after %d generations in %.3f s%n", reason, population.generation, (now - start) / 1e9);
+            if (saving != null) saving.join();
+            if (checkpoint != null) System.out.println("saved " + Checkpoint.save(population, checkpoint).join());
+            if (source != null) emit(population.bestPlayer(), source);
+            if (population.evaluationEngine() instanceof RemoteEvaluationEngine remote) remote.close();
+            if (cluster != null) cluster.close();
+            population.close();
+            break;
+        }
+    }
+
+    private static Individual islands(int islands, Archipelago.Topology topology, int interval, int migrants, boolean racing, Dataset data,
+                                long seed, long generations, double target, double budget, int every) {
+        Classification classification = new Classification(seed);
+        classification.initPoints();
+        Archipelago archipelago = new Archipelago(islands, data == null ? 2 : data.features(), 1, seed, topology, interval, migrants, island -> {
+            island.setSpeciation(new Speciation());
+            island.setDataset(data);
+            if (racing) island.setRacing(data == null ? classification.racing() : Racing.of(data, 100, 1e-3, 0.5, seed));
+        });
+        System.out.printf(Locale.ROOT, "seed %d, %d islands of %d individuals, %s topology, %d migrants every %d generations%n",
+                seed, islands, Population.NUM_INDIVIDUALS, topology.name().toLowerCase(Locale.ROOT), migrants, interval);
+        long start = System.nanoTime();
+        String reason;
+        while (true) {
+            long windowStart = System.nanoTime();
+            // islands run freely within a window, the barrier between windows only serves reporting
+            archipelago.run(every);
+            long now = System.nanoTime();
+            int generation = archipelago.islands()[0].generation;
+            StringBuilder best = new StringBuilder();
+            for (Population island : archipelago.islands()) best.append(String.format(Locale.ROOT, " %.4f", island.bestFitness));
+            System.out.printf(Locale.ROOT, "gen %7d  best%s  migrants %d  avg %9.3f ms  %8.1f gen/s%n",
+                    generation, best, archipelago.migrations(), (now - windowStart) / 1e6 / every, every * 1e9 / (now - windowStart));
+            if (archipelago.bestFitness() >= target) reason = "target fitness reached";
+            else if (generation >= generations) reason = "generation limit reached";
+            else if ((now - start) / 1e9 >= budget) reason = "time budget exhausted";
+            else continue;
+            System.out.printf(Locale.ROOT, "%s after %d generations in %.3f s, best %.4f%n", reason, generation, (now - start) / 1e9, archipelago.bestFitness());
+            archipelago.close();
+            return archipelago.best();
+        }
+    }
+
+    private static void emit(Individual champion, Path source) throws IOException {
+        String name = source.getFileName().toString();
+        if (name.endsWith(".java")) name = name.substring(0, name.length() - ".java".length());
+        Files.writeString(source, CompiledNetwork.source(champion.getBrain(), name));
+        System.out.println("wrote the champion to " + source);
+    }
+
+    // the binary file next to a CSV, written once and again only when the CSV is newer
+    private static Path convert(Path csv) throws IOException {
+        String name = csv.getFileName().toString();
+        Path file = csv.resolveSibling(name.substring(0, name.length() - ".csv".length()) + ".bin");
+        if (Files.exists(file) && Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(csv)) >= 0) return file;
+        long start = System.nanoTime();
+        MappedDataset data = MappedDataset.convert(csv, file);
+        System.out.printf(Locale.ROOT, "converted %d samples of %d features to %s in %.3f s%n", data.size(), data.features(), file, (System.nanoTime() - start) / 1e9);
+        return file;
+    }
+
+    private static void print(Population population, long lastNanos, double averageNanos, long slowestNanos) {
+        System.out.printf(Locale.ROOT, "gen %7d  best %.4f  species %3d  last %9.3f ms  avg %9.3f ms  max %9.3f ms  %8.1f gen/s%n",
+                population.generation,
+                population.bestFitness,
+                population.speciation() == null ? 1 : population.speciation().species().size(),
+                lastNanos / 1e6,
+                averageNanos / 1e6,
+                slowestNanos / 1e6,
+                1e9 / averageNanos);
+        Phenotype champion = population.bestPlayer().getBrain().phenotype();
+        System.out.printf(Locale.ROOT, "        champion  %d nodes  %d links  simplified away %d nodes  %d links  %d folded%n",
+                champion.size(), champion.links(), champion.removedNodes(), champion.removedLinks(), champion.foldedNodes());
+        FitnessCache cache = population.fitnessCache();
+        if (cache != null)
+            System.out.printf(Locale.ROOT, "        fitness cache  hit rate %.1f%%  hits %d  duplicates %d  evaluated %d  evictions %d  %d/%d entries  %d KB%n",
+                    100 * cache.hitRate(), cache.hits(), cache.duplicates(), cache.misses(), cache.evictions(), cache.size(), cache.capacity(), cache.memoryBytes() / 1024);
+        if (population.evaluationEngine() instanceof RemoteEvaluationEngine remote)
+            System.out.printf(Locale.ROOT, "        remote  workers %d  batches %d  redispatched %d  stolen %d  local %d%n",
+                    remote.workers(), remote.batches(), remote.redispatched(), remote.stolen(), remote.local());
+        Racing race = population.racing();
+        if (race != null)
+            System.out.printf(Locale.ROOT, "        racing  threshold %.4f  samples %d of %d  stopped %d%n",
+                    race.threshold(), race.lastSamples(), (long) race.size() * population.players().length, race.lastStopped());
+        Metrics.Generation metrics = population.metrics();
+        if (metrics != null) {
+            StringBuilder phases = new StringBuilder("        ");
+            for (Metrics.Phase phase : Metrics.Phase.values())
+                phases.append(String.format(Locale.ROOT, "%s %.3f ms  ", phase.name().toLowerCase(Locale.ROOT), metrics.nanos(phase) / 1e6));
+            phases.append(String.format(Locale.ROOT, "nodes %.1f  connections %.1f  layers %d  reorders %d  compilations %d  allocated %.1f MB",
+                    metrics.nodes().mean(), metrics.connections().mean(), metrics.layers().max(), metrics.reorders(), metrics.compilations(),
+                    metrics.allocatedBytes() / 1e6));
+            System.out.println(phases);
+        }
+    }
+}
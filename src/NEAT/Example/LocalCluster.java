@@ -0,0 +1,39 @@
+package NEAT.Example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts {@link Worker} processes on this machine, on the class path of the current JVM, to try the
+ * distributed mode without a cluster.
+ */
+public class LocalCluster implements AutoCloseable {
+    private final List<Process> workers = new ArrayList<>();
+
+    public LocalCluster(int workers, int port, long seed) throws IOException {
+        this(workers, port, seed, null);
+    }
+    /** @param data the {@link NEAT.MappedDataset} file workers evaluate on, {@code null} for the points */
+    public LocalCluster(int workers, int port, long seed, Path data) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (int i = 0; i < workers; i++) {
+            List<String> command = new ArrayList<>(List.of(java, "-Dneat.evaluation=sequential", "-cp", System.getProperty("java.class.path"),
+                    Worker.class.getName(), "localhost", String.valueOf(port), String.valueOf(seed)));
+            if (data != null) command.add(data.toString());
+            this.workers.add(new ProcessBuilder(command)
+                    .inheritIO()
+                    .start());
+        }
+    }
+
+    public List<Process> workers() {
+        return this.workers;
+    }
+
+    @Override public void close() {
+        this.workers.forEach(Process::destroy);
+    }
+}
@@ -0,0 +1,173 @@
+package NEAT.Example;
+
+import NEAT.NeuralNetwork;
+import NEAT.NeuralNetwork.Connection;
+import NEAT.NeuralNetwork.Node;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static NEAT.Example.Classification.*;
+import static NEAT.Example.Visual.*;
+import static java.awt.Color.*;
+import static java.lang.String.valueOf;
+
+/**
+ * Shows the champion of a running evolution without holding it up. The evolution thread hands over
+ * {@link Snapshot}s through an {@link AtomicReference} and never waits, the event dispatch thread picks
+ * up the newest one at most {@link #FPS} times a second and draws it into off-screen images the panels
+ * only copy to the screen. The points and the function never change and are drawn once, the genome
+ * and how it classifies the points only when another individual becomes champion.
+ */
+final class Renderer {
+    static final int FPS = 30;
+
+    /** What a frame shows, {@code genome} is a copy nothing else touches once it was published. */
+    record Snapshot(int generation, double bestFitness, int species, long speciationNanos, long generationNanos, int id, NeuralNetwork genome) {
+    }
+
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+    private final BufferedImage points = image(), evaluation = image(), genome = image();
+    private final Ellipse2D.Double dot = new Ellipse2D.Double();
+    // only touched on the event dispatch thread, like everything Swing
+    private JFrame annFrame, classificationFrame;
+    private int shown = -1;
+
+    /** Replaces the snapshot to show next, frames skip the ones published in between. */
+    void publish(Snapshot snapshot) {
+        this.latest.set(snapshot);
+    }
+
+    void start() {
+        SwingUtilities.invokeLater(() -> {
+            Graphics2D g = this.points.createGraphics();
+            this.renderPoints(g);
+            g.dispose();
+            this.annFrame = frame(new Scene(this.genome), 0);
+            this.classificationFrame = frame(new Scene(this.points, this.evaluation), WIDTH + 50);
+            new Timer(1000 / FPS, e -> this.frame()).start();
+        });
+    }
+    private static JFrame frame(JPanel scene, int dx) {
+        JFrame frame = new JFrame();
+        frame.setSize(screen);
+        frame.setLocation(dx, 50);
+        scene.setPreferredSize(screen);
+        frame.add(scene);
+        frame.pack();
+        frame.setVisible(true);
+        frame.setResizable(false);
+        frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        return frame;
+    }
+    private static BufferedImage image() {
+        return new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private void frame() {
+        Snapshot snapshot = this.latest.getAndSet(null);
+        if (snapshot == null) return;
+        this.annFrame.setTitle("Generation " + snapshot.generation() +
+                " -- " + snapshot.bestFitness() + " best fit." +
+                " -- " + snapshot.species() + " species in " + snapshot.speciationNanos() / 1000 + " us" +
+                " -- " + snapshot.generationNanos() / 1_000_000 + " ms");
+        if (snapshot.id() == this.shown) return;
+        this.shown = snapshot.id();
+        Graphics2D g = this.genome.createGraphics();
+        this.renderGenome(g, snapshot.genome());
+        g.dispose();
+        g = this.evaluation.createGraphics();
+        this.renderEvaluation(g, snapshot.genome());
+        g.dispose();
+        this.annFrame.repaint();
+        this.classificationFrame.repaint();
+    }
+
+    private void renderPoints(Graphics2D g) {
+        g.setColor(new Color(0, 0, 0));
+        g.fill3DRect(0, 0, WIDTH, HEIGHT, false);
+        g.setColor(Color.WHITE);
+        for (Classification.Point p : Classification.points) this.fill(g, map(p.x(), 0, Math.PI * 4, 0, WIDTH), p.y() * HEIGHT, 5);
+        g.setColor(new Color(61, 61, 61));
+        for (int i = 0; i < WIDTH; i++) this.fill(g, i, myFunction.apply(map(i, 0, WIDTH, 0, Math.PI * 4)) * HEIGHT, 5);
+    }
+    private void renderEvaluation(Graphics2D g, NeuralNetwork brain) {
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setComposite(AlphaComposite.SrcOver);
+        double[][] outputs = new double[1][NUM_POINTS];
+        brain.feedforward(inputs, NUM_POINTS, outputs);
+        for (int i = 0; i < NUM_POINTS; i++) {
+            Classification.Point p = Classification.points[i];
+            int eval = outputs[0][i] >= 0 ? 1 : 0;
+            g.setColor(p.label() != eval ? RED : eval == 0 ? BLUE : GREEN);
+            this.fill(g, map(p.x(), 0, Math.PI * 4, 0, WIDTH), p.y() * HEIGHT, 4);
+        }
+    }
+    private void renderGenome(Graphics2D g, NeuralNetwork brain) {
+        g.setColor(new Color(0, 0, 0));
+        g.fill3DRect(0, 0, WIDTH, HEIGHT, false);
+        g.setColor(Color.WHITE);
+        Map<Node, Classification.Point> positions = layout(brain);
+        positions.forEach((n, point) -> {
+            int x = (int) point.x(), y = (int) point.y();
+            this.fill(g, x, y, 10);
+            g.drawString(valueOf(n.index()), x + 15, y);
+            g.drawString(activationsNames[n.activationKey()], x + 30, y);
+        });
+        for (Connection c : brain.connections()) {
+            if (!c.enabled()) continue;
+            Classification.Point p1 = positions.get(c.fromNode()), p2 = positions.get(c.toNode());
+            double x1 = p1.x(), x2 = p2.x(), y1 = p1.y(), y2 = p2.y();
+            g.draw(new Line2D.Double(x1, y1, x2, y2));
+            g.drawString(String.format("%f", c.weight()), (int) ((x1 + x2) / 2) + 10, (int) (y1 + y2) / 2);
+        }
+    }
+    private void fill(Graphics2D g, double x, double y, double radius) {
+        this.dot.setFrame(x - radius, y - radius, 2 * radius, 2 * radius);
+        g.fill(this.dot);
+    }
+
+    // layers from the bottom up, the nodes of a layer side by side and every other layer shifted right
+    private static Map<Node, Classification.Point> layout(NeuralNetwork brain) {
+        int startY = HEIGHT - 100, endY = 100, totY = startY - endY;
+        int startX = 100, endX = WIDTH - 100, totX = endX - startX;
+        Map<Node, Classification.Point> positions = new HashMap<>();
+        int gapY = totY / (brain.layers() - 1);
+        int[] gapX = new int[brain.layers()];
+        int[] drawnX = new int[brain.layers()];
+        Map<Integer, List<Node>> nodes = brain.nodes().stream().collect(Collectors.groupingBy(Node::layer));
+        Arrays.setAll(gapX, i -> totX / nodes.get(i).size());
+        for (Node n : brain.nodes()) {
+            int y = startY - (gapY * n.layer());
+            int x = startX + (gapX[n.layer()] * drawnX[n.layer()]);
+            x = n.layer() % 2 == 0 ? x : x + 50;
+            positions.put(n, new Classification.Point(x, y, -1));
+            drawnX[n.layer()]++;
+        }
+        return positions;
+    }
+
+    // copies its images to the screen, drawing them is up to the renderer, never serialized
+    @SuppressWarnings("serial")
+    private static final class Scene extends JPanel {
+        private final BufferedImage[] layers;
+
+        private Scene(BufferedImage... layers) {
+            this.layers = layers;
+        }
+        @Override protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            for (BufferedImage layer : this.layers) g.drawImage(layer, 0, 0, null);
+        }
+    }
+}
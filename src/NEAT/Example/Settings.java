@@ -1,10 +1,8 @@
 package NEAT.Example;
 
-import java.util.Random;
-
 public class Settings {
 
-    public static final Random RANDOM = new Random();
+    public static final long SEED = Long.getLong("neat.seed", System.nanoTime());
 
 
 }
@@ -1,14 +1,10 @@
 package NEAT.Example;
 
 import NEAT.Individual;
+import NEAT.NeuralNetwork;
+import NEAT.Population;
 
-import javax.swing.*;
 import java.awt.*;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class Visual {
     public static final int WIDTH = 700, HEIGHT = 700;
@@ -16,52 +12,32 @@ public class Visual {
     private static final Classification classification = new Classification();
     public static final String[] activationsNames = {"Sigmoid","Identity","Step","Tanh","ReLu","Sin","Cos"};
 
-    private final JFrame annFrame = new JFrame();
-    private final JFrame classificationFrame = new JFrame();
-    private final JPanel annScene = new JPanel();
-    private final JPanel classificationScene = new JPanel();
-    private Instant now = Instant.now();
-
-
-    {
-       initFrame(annFrame,annScene,0);
-       initFrame(classificationFrame,classificationScene, WIDTH + 50);
-    }
-
-    public static void initFrame(JFrame frame,JPanel scene, int dx) {
-        frame.setSize(screen);
-        frame.setLocation(dx,50);
-        scene.setPreferredSize(screen);
-        frame.add(scene);
-        frame.pack();
-        frame.setVisible(true);
-        frame.setResizable(false);
-        frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-    }
+    private final Renderer renderer = new Renderer();
 
     public static void main(String[] args) {
         new Visual().start();
     }
+    /** Evolves on a thread of its own as fast as it can, the {@link Renderer} shows the champion at its own pace. */
     public void start() {
-        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
-        final Individual[] best = new Individual[1];
-        service.scheduleAtFixedRate(() -> {
-            annFrame.setTitle("Generation " + classification.getPopulation().generation +
-                    " -- "+ classification.getPopulation().bestFitness + " best fit."+
-                    " -- "+ Duration.between(now,now = Instant.now()).getNano() + " ns");
-            classification.getPopulation().initPopulation();
-            classification.initPoints();
-            classification.evaluateAll();
-            if (classification.getPopulation().bestPlayer() != best[0]){
-                best[0] = classification.getPopulation().bestPlayer();
-                best[0].renderGenome((Graphics2D) annScene.getGraphics());
-                classification.renderPoints((Graphics2D) classificationScene.getGraphics());
-                best[0].renderEvaluation((Graphics2D) classificationScene.getGraphics());
+        classification.initPoints();
+        this.renderer.start();
+        new Thread(() -> {
+            Population population = classification.getPopulation();
+            int shown = -1;
+            NeuralNetwork genome = null;
+            while (true) {
+                long start = System.nanoTime();
+                classification.evaluateAll();
+                population.naturalSelection();
+                Individual best = population.bestPlayer();
+                // the champion's genome is only copied when it changed, the snapshot keeps it unchanged
+                if (best.id() != shown) {
+                    shown = best.id();
+                    genome = best.getBrain().copy();
+                }
+                this.renderer.publish(new Renderer.Snapshot(population.generation, population.bestFitness,
+                        population.speciation().species().size(), population.speciation().lastNanos(), System.nanoTime() - start, shown, genome));
             }
-
-            classification.getPopulation().naturalSelection();
-        }, 500, 120, TimeUnit.MILLISECONDS);
+        }, "evolution").start();
     }
-
-
 }
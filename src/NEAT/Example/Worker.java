@@ -0,0 +1,26 @@
+package NEAT.Example;
+
+import NEAT.MappedDataset;
+import NEAT.RemoteEvaluationEngine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Evaluates genomes for a coordinator, on its own copy of the classification points or of a data set file.
+ * <pre>
+ * java NEAT.Example.Worker HOST PORT SEED [DATA]
+ * </pre>
+ * The seed must be the coordinator's, the points are generated from it.
+ */
+public class Worker {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("usage: Worker HOST PORT SEED [DATA]");
+            System.exit(2);
+        }
+        Classification.generatePoints(Long.parseLong(args[2]));
+        RemoteEvaluationEngine.serve(args[0], Integer.parseInt(args[1]), args.length == 4 ? MappedDataset.open(Path.of(args[3])) : null);
+    }
+}
@@ -0,0 +1,145 @@
+package NEAT;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the fitness of genomes by {@link NeuralNetwork#structuralHash()}, so a genome that comes
+ * back unchanged (the elite, a child no mutation fired on, a duplicate within the generation) is
+ * evaluated once. Fitness must only depend on the genome, clear the cache whenever the data set changes.
+ * <p>
+ * Bounded and allocation free: a set associative table of primitive arrays, four entries per set,
+ * evicting the least recently used entry of a full set. Memory is fixed at 20 bytes per entry.
+ */
+public final class FitnessCache {
+    private static final int WAYS = 4;
+    private final long[] keys;
+    private final double[] values;
+    private final int[] used;
+    private final int mask;
+    private int clock;
+    private int size;
+    private long hits, duplicates, misses, evictions;
+    private long[] hashes = new long[0];
+    private Individual[] pending = new Individual[0];
+    private int[] copies = new int[0];
+    private final LongHashSet batch = new LongHashSet();
+
+    public FitnessCache(int capacity) {
+        int wanted = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        int sets = wanted == 1 ? 1 : Integer.highestOneBit(wanted - 1) << 1;
+        this.keys = new long[sets * WAYS];
+        this.values = new double[sets * WAYS];
+        this.used = new int[sets * WAYS];
+        this.mask = sets - 1;
+    }
+
+    /** Evaluates the individuals whose genome is neither cached nor repeated earlier in the array. */
+    public void evaluate(Individual[] individuals, EvaluationEngine engine) {
+        int n = individuals.length;
+        if (this.hashes.length < n) {
+            this.hashes = new long[n];
+            this.pending = new Individual[n];
+            this.copies = new int[n];
+        }
+        this.batch.clear();
+        int evaluate = 0, copy = 0;
+        for (int i = 0; i < n; i++) {
+            long hash = key(individuals[i].getBrain().structuralHash());
+            this.hashes[i] = hash;
+            int slot = this.find(hash);
+            if (slot >= 0) {
+                individuals[i].setFitness(this.values[slot]);
+                this.hits++;
+            } else if (this.batch.add(hash)) {
+                this.pending[evaluate++] = individuals[i];
+            } else {
+                this.copies[copy++] = i;
+            }
+        }
+        if (evaluate > 0) engine.evaluate(this.pending, evaluate);
+        // estimates of raced out individuals depend on the race threshold, only exact fitness is kept
+        for (int k = 0; k < evaluate; k++)
+            if (this.pending[k].exact()) this.put(key(this.pending[k].getBrain().structuralHash()), this.pending[k].fitness());
+        this.misses += evaluate;
+        for (int k = 0; k < copy; k++) {
+            Individual individual = individuals[this.copies[k]];
+            int slot = this.find(this.hashes[this.copies[k]]);
+            // a set can overflow within one batch, fall back to evaluating the duplicate
+            if (slot >= 0) individual.setFitness(this.values[slot]);
+            else individual.evaluateAll();
+            this.duplicates++;
+        }
+        Arrays.fill(this.pending, 0, evaluate, null);
+    }
+
+    /** Whether the fitness of the genome is known, without counting as a lookup. */
+    public boolean contains(NeuralNetwork genome) {
+        long key = key(genome.structuralHash());
+        int base = (int) (key ^ key >>> 32) & this.mask;
+        for (int slot = base * WAYS, end = slot + WAYS; slot < end; slot++) if (this.keys[slot] == key) return true;
+        return false;
+    }
+
+    private int find(long key) {
+        int base = (int) (key ^ key >>> 32) & this.mask;
+        for (int slot = base * WAYS, end = slot + WAYS; slot < end; slot++) {
+            if (this.keys[slot] == key) {
+                this.used[slot] = ++this.clock;
+                return slot;
+            }
+        }
+        return -1;
+    }
+    private void put(long key, double value) {
+        int base = (int) (key ^ key >>> 32) & this.mask, victim = base * WAYS;
+        for (int slot = base * WAYS, end = slot + WAYS; slot < end; slot++) {
+            if (this.keys[slot] == key || this.keys[slot] == 0) {
+                victim = slot;
+                break;
+            }
+            if (this.used[slot] - this.used[victim] < 0) victim = slot;
+        }
+        if (this.keys[victim] == 0) this.size++;
+        else if (this.keys[victim] != key) this.evictions++;
+        this.keys[victim] = key;
+        this.values[victim] = value;
+        this.used[victim] = ++this.clock;
+    }
+    // zero marks an empty slot here and -1 one of the batch set
+    private static long key(long hash) {
+        return hash == 0 || hash == -1 ? 1 : hash;
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, 0);
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+    public int capacity() {
+        return this.keys.length;
+    }
+    /** Lookups answered from entries of earlier evaluations. */
+    public long hits() {
+        return this.hits;
+    }
+    /** Lookups answered by a genome evaluated earlier in the same batch. */
+    public long duplicates() {
+        return this.duplicates;
+    }
+    public long misses() {
+        return this.misses;
+    }
+    public long evictions() {
+        return this.evictions;
+    }
+    public double hitRate() {
+        long lookups = this.hits + this.duplicates + this.misses;
+        return lookups == 0 ? 0 : (this.hits + this.duplicates) / (double) lookups;
+    }
+    public long memoryBytes() {
+        return this.keys.length * (long) (Long.BYTES + Double.BYTES + Integer.BYTES);
+    }
+}
@@ -0,0 +1,94 @@
+package NEAT;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of a genome. Integers are LEB128 varints: node ids as zigzag deltas in gene
+ * order, innovation numbers as deltas in their sorted order, and the enabled flag shares a varint
+ * with the target node id. Weights and biases are stored as their raw 8 IEEE bits so a decoded
+ * genome evaluates and mutates exactly like the original.
+ * <pre>
+ * genome     := version id numInputs numOutputs layers nextNode flags nodeCount node* connectionCount connection*
+ * node       := zigzag(index - previous index) layer (activation &lt;&lt; 1 | output) bias
+ * connection := (innovation - previous innovation) fromNode (toNode &lt;&lt; 1 | enabled) weight
+ * </pre>
+ */
+public final class GenomeCodec {
+    public static final int VERSION = 1;
+
+    private GenomeCodec() {
+    }
+
+    public static byte[] encode(NeuralNetwork network) {
+        Output out = new Output(64);
+        out.varint(VERSION);
+        network.write(out);
+        return out.toByteArray();
+    }
+    public static NeuralNetwork decode(ByteBuffer in, InnovationRegistry innovations) {
+        int version = (int) varint(in);
+        if (version != VERSION) throw new IllegalArgumentException("unsupported genome version " + version);
+        return NeuralNetwork.read(in, innovations);
+    }
+
+    static long varint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+    }
+    static long zigzag(ByteBuffer in) {
+        long value = varint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+    static double bits(ByteBuffer in) {
+        return Double.longBitsToDouble(in.getLong());
+    }
+
+    /** Growable big endian buffer that the genome parts write themselves into. */
+    static final class Output {
+        private byte[] bytes;
+        private int size;
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void varint(long value) {
+            this.ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                this.bytes[this.size++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            this.bytes[this.size++] = (byte) value;
+        }
+        void zigzag(long value) {
+            this.varint(value << 1 ^ value >> 63);
+        }
+        void bits(double value) {
+            this.int64(Double.doubleToRawLongBits(value));
+        }
+        void int64(long value) {
+            this.ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) this.bytes[this.size++] = (byte) (value >>> shift);
+        }
+        void int32(int value) {
+            this.ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) this.bytes[this.size++] = (byte) (value >>> shift);
+        }
+        int size() {
+            return this.size;
+        }
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(this.bytes, 0, this.size);
+        }
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+        private void ensure(int more) {
+            if (this.size + more > this.bytes.length) this.bytes = Arrays.copyOf(this.bytes, Math.max(this.size + more, this.bytes.length * 2));
+        }
+    }
+}
@@ -1,86 +1,152 @@
 package NEAT;
 
 import NEAT.Example.Classification;
-import NEAT.NeuralNetwork.Connection;
-import NEAT.NeuralNetwork.Node;
-import NEAT.Example.Visual;
 
-import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
 
-import static java.awt.Color.*;
-import static java.lang.String.valueOf;
-import static NEAT.Example.Classification.*;
-import static NEAT.Population.NUM_INDIVIDUALS;
-import static NEAT.Example.Visual.*;
 
 public class Individual implements Cloneable {
-    private static int last_id = -1;
-    private final int id;
+    private static final AtomicInteger last_id = new AtomicInteger(-1);
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+    private int id;
     private int score;
-    private int totX;
-    private final Map<Node, Classification.Point> nodePositions = new HashMap<>();
-    private int[] evaluations;
     private NeuralNetwork brain;
     private double fitness;
+    private Racing racing;
+    private Dataset dataset;
+    private int samples;
+    private boolean exact = true;
 
 
     public Individual() {
-        this(++last_id);
+        this(last_id.incrementAndGet());
     }
     public Individual(int id) {
         this.id = id;
     }
-    public void init() {
-        int startY = HEIGHT - 100;
-        int endY = 100;
-        int totY = startY - endY;
-        int startX = 100;
-        int endX = WIDTH - 100;
-        totX = endX - startX;
-        nodePositions.clear();
-        int gapY = totY / (brain.layers()-1);
-        int[] gapX = new int[brain.layers()];
-        int[] drawnX = new int[brain.layers()];
-        Map<Integer, List<Node>> nodes = this.brain.nodes().stream().collect(Collectors.groupingBy(Node::layer));
-        Arrays.setAll(gapX, i -> totX / nodes.get(i).size());
-        for (int i = 0; i < brain.nodes().size(); i++) {
-            Node n = brain.nodes().get(i);
-            int y = startY - (gapY * n.layer());
-            int x = startX + (gapX[n.layer()] * drawnX[n.layer()]);
-            x = n.layer() % 2 == 0 ? x : x + 50;
-            nodePositions.put(n,new Classification.Point(x,y,-1));
-            drawnX[n.layer()]++;
-        }
-    }
+    /** Evaluates on the data set of the population, the classification points when it has none. */
     public void evaluateAll() {
-        this.evaluations = new int[NUM_POINTS];
+        this.evaluate(this.dataset == null ? Classification.dataset : this.dataset);
+    }
+    /** Scores every sample of {@code data}, one chunk at a time, unless racing stops it early. */
+    public void evaluate(Dataset data) {
+        if (data.features() != this.brain.numInputs())
+            throw new IllegalArgumentException(data.features() + " features for a genome of " + this.brain.numInputs() + " inputs");
         this.score = 0;
-        for (int i = 0; i< NUM_POINTS; i++) {
-            Classification.Point p = points[i];
-            double[] out = this.brain.feedforward(new double[]{p.x(),p.y()});
-            int res = out[0] >= 0 ? 1 : 0;
-            this.evaluations[i] = res;
-            if (res == p.label()) this.score ++;
+        this.exact = true;
+        if (this.racing != null) {
+            this.race(this.racing);
+            return;
         }
-        this.fitness = score/(double)NUM_POINTS;
+        Buffers buffers = BUFFERS.get();
+        double[][] inputs = buffers.inputs(data.features()), outputs = buffers.outputs(this.brain.numOutputs(), Dataset.CHUNK);
+        int[] labels = buffers.labels;
+        double[] out = outputs[0];
+        int n = data.size();
+        for (int from = 0; from < n; from += Dataset.CHUNK) {
+            int count = Math.min(Dataset.CHUNK, n - from);
+            data.read(from, count, inputs, labels);
+            this.brain.feedforward(inputs, count, outputs);
+            for (int i = 0; i < count; i++) {
+                int res = out[i] >= 0 ? 1 : 0;
+                if (res == labels[i]) this.score++;
+            }
+        }
+        this.samples = n;
+        this.fitness = score/(double)n;
     }
 
-    public Individual crossover(Individual parent) {
-        Individual child = new Individual();
-        child.brain = parent.fitness < this.fitness ?
-                this.brain.crossover(parent.brain) :
-                parent.brain.crossover(this.brain);
-        child.brain.mutate();
+    private void race(Racing racing) {
+        double[][] outputs = BUFFERS.get().outputs(this.brain.numOutputs(), racing.size());
+        double[] out = outputs[0];
+        int seen = 0, n = racing.size();
+        while (seen < n) {
+            int count = Math.min(racing.batch(), n - seen);
+            this.brain.feedforward(racing.inputs(), seen, count, outputs);
+            for (int i = seen; i < seen + count; i++) {
+                int res = out[i] >= 0 ? 1 : 0;
+                if (res == racing.label(i)) this.score++;
+            }
+            seen += count;
+            if (seen < n && racing.hopeless(this.score, seen)) {
+                this.exact = false;
+                break;
+            }
+        }
+        this.samples = seen;
+        this.fitness = this.score / (double) (this.exact ? n : seen);
+    }
+
+    public Individual crossover(Individual parent, RandomGenerator random) {
+        return this.crossover(parent, random, null);
+    }
+    /** Breeds into {@code target}, a retired individual whose genome arrays are reused, or a new one when {@code null}. */
+    public Individual crossover(Individual parent, RandomGenerator random, Individual target) {
+        Individual child = this.offspring(parent, random, target);
+        child.brain.mutate(random);
         child.brain.generateNetwork();
         return child;
     }
+    /** The child of a crossover before it is mutated. */
+    public Individual offspring(Individual parent, RandomGenerator random) {
+        return this.offspring(parent, random, null);
+    }
+    public Individual offspring(Individual parent, RandomGenerator random, Individual target) {
+        Individual child = target == null ? new Individual() : target.recycle();
+        NeuralNetwork reuse = target == null ? null : target.brain;
+        child.brain = parent.fitness < this.fitness ?
+                this.brain.crossover(parent.brain, random, reuse) :
+                parent.brain.crossover(this.brain, random, reuse);
+        return child;
+    }
+    // a new identity for a pooled individual, its brain is overwritten by the caller
+    private Individual recycle() {
+        this.id = last_id.incrementAndGet();
+        this.score = 0;
+        this.fitness = 0;
+        this.samples = 0;
+        this.exact = true;
+        this.racing = null;
+        return this;
+    }
+
+    /** Deep copy under a new id, safe to hand to another thread. */
+    public Individual copy() {
+        Individual copy = new Individual();
+        copy.brain = this.brain.copy();
+        copy.fitness = this.fitness;
+        return copy;
+    }
+    /** Makes this individual an exact copy of {@code other}, id included, reusing its genome arrays. */
+    public Individual copyFrom(Individual other) {
+        this.id = other.id;
+        this.score = other.score;
+        this.fitness = other.fitness;
+        this.samples = other.samples;
+        this.exact = other.exact;
+        this.brain = this.brain == null ? other.brain.copy() : this.brain.copyFrom(other.brain);
+        return this;
+    }
+    void write(GenomeCodec.Output out) {
+        out.varint(this.id);
+        out.bits(this.fitness);
+        this.brain.write(out);
+    }
+    static Individual read(ByteBuffer in, InnovationRegistry innovations) {
+        Individual individual = new Individual((int) GenomeCodec.varint(in));
+        individual.fitness = GenomeCodec.bits(in);
+        individual.brain = NeuralNetwork.read(in, innovations);
+        return individual;
+    }
+    static int lastId() {
+        return last_id.get();
+    }
+    /** Makes sure ids handed out from now on do not collide with restored individuals. */
+    static void reserveIds(int lastId) {
+        last_id.accumulateAndGet(lastId, Math::max);
+    }
 
     public void setBrain(NeuralNetwork brain) {
         this.brain = brain;
@@ -106,51 +172,47 @@ public class Individual implements Cloneable {
                 }""".formatted(id, brain, fitness, score);
     }
 
-    public void renderGenome(Graphics2D g) {
-        g.setColor(new Color(0, 0, 0));
-        g.fill3DRect(0, 0, Visual.WIDTH, Visual.HEIGHT, false);
-        if (brain== null) return;
-
-        g.setColor(Color.WHITE);
-
-        nodePositions.forEach((n,point) -> {
-            int x = (int) point.x(), y = (int) point.y();
-            g.fill(new Ellipse2D.Double(x - 10, y - 10, 20, 20));
-            g.drawString(valueOf(n.index()), x + 15, y);
-            g.drawString(activationsNames[n.activationKey()], x + 30, y);
-        });
-
-        for (Connection c : brain.connections()) {
-            if (c.enabled()){
-                Classification.Point p1 = nodePositions.get(c.fromNode());
-                Classification.Point p2 = nodePositions.get(c.toNode());
-                double x1 = p1.x(), x2 = p2.x(), y1 = p1.y(), y2 = p2.y();
-                g.draw(new Line2D.Double(x1,y1,x2,y2));
-                g.drawString(String.format("%f",c.weight()),(int)((x1+x2) / 2) + 10, (int)(y1+y2) /2);
-            }
-        }
-
+    public int id() {
+        return this.id;
     }
-    public void renderEvaluation(Graphics2D g) {
-        for (int i = 0; i<NUM_POINTS; i++){
-            Classification.Point p = points[i];
-//            if (p == null) return;
-            renderPointLabel(g, i, p);
-        }
+    public double fitness() {
+        return this.fitness;
+    }
+    void setFitness(double fitness) {
+        this.fitness = fitness;
+        this.samples = 0;
+        this.exact = true;
+    }
+    void setRacing(Racing racing) {
+        this.racing = racing;
+    }
+    void setDataset(Dataset dataset) {
+        this.dataset = dataset;
+    }
+    /** Samples scored by the last evaluation, zero when the fitness came from a {@link FitnessCache}. */
+    public int samples() {
+        return this.samples;
     }
-    private void renderPointLabel(Graphics2D g, int i, Classification.Point p) {
-        double eval = evaluations[i];
-        if (p.label() == eval) g.setColor(eval == 0 ? BLUE : GREEN);
-        else g.setColor(RED);
-        g.fill(new Ellipse2D.Double(
-                map(p.x(), 0, Math.PI*4, 0, WIDTH) - 4,
-                p.y() * HEIGHT - 4 ,
-                8,
-                8
-        ));
+    /** False when racing stopped the last evaluation early and {@link #fitness()} is an estimate. */
+    public boolean exact() {
+        return this.exact;
     }
 
-    public double fitness() {
-        return this.fitness;
+    // a chunk of samples and the outputs for it are only needed while scoring, so they live with the thread
+    private static final class Buffers {
+        private double[][] inputs = new double[0][];
+        private final int[] labels = new int[Dataset.CHUNK];
+        private double[][] outputs = new double[1][Dataset.CHUNK];
+
+        private double[][] inputs(int features) {
+            if (this.inputs.length < features) this.inputs = new double[features][Dataset.CHUNK];
+            return this.inputs;
+        }
+        // racing indexes outputs by sample, so it needs as many as it has samples
+        private double[][] outputs(int outputs, int samples) {
+            if (this.outputs.length < outputs || this.outputs[0].length < samples)
+                this.outputs = new double[Math.max(outputs, this.outputs.length)][Math.max(samples, this.outputs[0].length)];
+            return this.outputs;
+        }
     }
 }
@@ -0,0 +1,47 @@
+package NEAT;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out innovation numbers for connection genes. The same structural gene (a link between the
+ * same pair of node ids) always gets the same number, within a generation and across generations,
+ * so genomes of a population can be aligned by innovation number.
+ */
+public final class InnovationRegistry {
+    private final ConcurrentHashMap<Long, Integer> innovations = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public int innovation(int fromNode, int toNode) {
+        Integer known = this.innovations.get(key(fromNode, toNode));
+        if (known != null) return known;
+        return this.innovations.computeIfAbsent(key(fromNode, toNode), k -> this.next.getAndIncrement());
+    }
+    public int size() {
+        return this.next.get();
+    }
+
+    /** Every link in innovation order, so the numbers themselves need not be stored. */
+    void write(GenomeCodec.Output out) {
+        long[] byInnovation = new long[this.next.get()];
+        this.innovations.forEach((key, innovation) -> byInnovation[innovation] = key);
+        out.varint(byInnovation.length);
+        for (long key : byInnovation) {
+            out.varint(key >>> 32);
+            out.varint(key & 0xffffffffL);
+        }
+    }
+    static InnovationRegistry read(ByteBuffer in) {
+        InnovationRegistry registry = new InnovationRegistry();
+        int size = (int) GenomeCodec.varint(in);
+        for (int innovation = 0; innovation < size; innovation++)
+            registry.innovations.put(key((int) GenomeCodec.varint(in), (int) GenomeCodec.varint(in)), innovation);
+        registry.next.set(size);
+        return registry;
+    }
+
+    static long key(int fromNode, int toNode) {
+        return (long) fromNode << 32 | (toNode & 0xffffffffL);
+    }
+}
@@ -0,0 +1,80 @@
+package NEAT;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing set of non negative longs, used to index the links of a genome by their packed
+ * endpoints without boxing.
+ */
+final class LongHashSet {
+    private static final long EMPTY = -1;
+    private long[] keys;
+    private int size;
+
+    LongHashSet() {
+        this(16);
+    }
+    LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    boolean contains(long key) {
+        int mask = this.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (this.keys[i] == key) return true;
+            if (this.keys[i] == EMPTY) return false;
+        }
+    }
+    boolean add(long key) {
+        int mask = this.keys.length - 1;
+        int i = mix(key) & mask;
+        for (; this.keys[i] != EMPTY; i = (i + 1) & mask)
+            if (this.keys[i] == key) return false;
+        this.keys[i] = key;
+        if (++this.size * 2 > this.keys.length) this.rehash(this.keys.length << 1);
+        return true;
+    }
+    boolean remove(long key) {
+        int mask = this.keys.length - 1;
+        int i = mix(key) & mask;
+        for (; this.keys[i] != key; i = (i + 1) & mask)
+            if (this.keys[i] == EMPTY) return false;
+        // backward shift deletion keeps probe sequences intact without tombstones
+        for (int j = (i + 1) & mask; this.keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = mix(this.keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                this.keys[i] = this.keys[j];
+                i = j;
+            }
+        }
+        this.keys[i] = EMPTY;
+        this.size--;
+        return true;
+    }
+    void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+    }
+    int size() {
+        return this.size;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = this.keys;
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        int mask = capacity - 1;
+        for (long key : old) {
+            if (key == EMPTY) continue;
+            int i = mix(key) & mask;
+            while (this.keys[i] != EMPTY) i = (i + 1) & mask;
+            this.keys[i] = key;
+        }
+    }
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
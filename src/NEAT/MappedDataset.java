@@ -0,0 +1,150 @@
+package NEAT;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Data set in a binary file mapped into memory, column after column, so reading a chunk of a feature is
+ * one contiguous copy and the operating system pages samples in and out as evaluation streams through
+ * them. Nothing but the mappings lives on the heap.
+ * <pre>
+ * file := "NEAD" version features size column{features} labels     little endian
+ * column := double{size}
+ * labels := int{size}
+ * </pre>
+ * {@link #convert} writes the file from a CSV once. Every column is mapped on its own, so a feature can
+ * hold up to 2^28 samples.
+ */
+public final class MappedDataset implements Dataset {
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x4E454144;
+    private static final int HEADER = 16;
+
+    private final int features;
+    private final int size;
+    private final DoubleBuffer[] columns;
+    private final IntBuffer labels;
+
+    private MappedDataset(int features, int size, DoubleBuffer[] columns, IntBuffer labels) {
+        this.features = features;
+        this.size = size;
+        this.columns = columns;
+        this.labels = labels;
+    }
+
+    public static MappedDataset open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) if (channel.read(header) < 0) break;
+            header.flip();
+            if (header.limit() < HEADER || header.getInt() != MAGIC) throw new IOException(file + " is not a data set");
+            int version = header.getInt(), features = header.getInt(), size = header.getInt();
+            if (version != VERSION) throw new IOException("unsupported data set version " + version);
+            long column = (long) size * Double.BYTES;
+            if (channel.size() != HEADER + features * column + (long) size * Integer.BYTES) throw new IOException(file + " is truncated");
+            DoubleBuffer[] columns = new DoubleBuffer[features];
+            for (int f = 0; f < features; f++)
+                columns[f] = map(channel, FileChannel.MapMode.READ_ONLY, HEADER + f * column, column).asDoubleBuffer();
+            IntBuffer labels = map(channel, FileChannel.MapMode.READ_ONLY, HEADER + features * column, (long) size * Integer.BYTES).asIntBuffer();
+            return new MappedDataset(features, size, columns, labels);
+        }
+    }
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, length);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts a CSV file, one sample per line with the features followed by an integer label, into the
+     * binary format and opens the result. A first line that does not start with a number is a header.
+     * The CSV is read twice instead of being held in memory, the output is written to a temporary file
+     * first and moved into place.
+     */
+    public static MappedDataset convert(Path csv, Path file) throws IOException {
+        int features = -1, size = 0;
+        boolean header = false;
+        try (BufferedReader in = Files.newBufferedReader(csv)) {
+            int number = 0;
+            for (String line; (line = in.readLine()) != null; ) {
+                number++;
+                if (line.isBlank()) continue;
+                String[] fields = line.split(",", -1);
+                if (features < 0) {
+                    features = fields.length - 1;
+                    if (features < 1) throw new IOException(csv + ":" + number + ": needs at least one feature and a label");
+                    if (!numeric(fields[0])) {
+                        header = true;
+                        continue;
+                    }
+                }
+                if (fields.length != features + 1) throw new IOException(csv + ":" + number + ": " + fields.length + " fields, expected " + (features + 1));
+                size++;
+            }
+        }
+        if (features < 0) throw new IOException(csv + " is empty");
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long column = (long) size * Double.BYTES;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedReader in = Files.newBufferedReader(csv)) {
+            ByteBuffer head = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER);
+            head.putInt(MAGIC).putInt(VERSION).putInt(features).putInt(size);
+            DoubleBuffer[] columns = new DoubleBuffer[features];
+            for (int f = 0; f < features; f++)
+                columns[f] = map(channel, FileChannel.MapMode.READ_WRITE, HEADER + f * column, column).asDoubleBuffer();
+            IntBuffer labels = map(channel, FileChannel.MapMode.READ_WRITE, HEADER + features * column, (long) size * Integer.BYTES).asIntBuffer();
+            int number = 0, row = 0;
+            boolean skip = header;
+            for (String line; (line = in.readLine()) != null; ) {
+                number++;
+                if (line.isBlank()) continue;
+                if (skip) {
+                    skip = false;
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (row == size || fields.length != features + 1) throw new IOException(csv + " changed while converting it");
+                try {
+                    for (int f = 0; f < features; f++) columns[f].put(row, Double.parseDouble(fields[f].trim()));
+                    labels.put(row, (int) Double.parseDouble(fields[features].trim()));
+                } catch (NumberFormatException e) {
+                    throw new IOException(csv + ":" + number + ": " + e.getMessage());
+                }
+                row++;
+            }
+            if (row != size) throw new IOException(csv + " changed while converting it");
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+    private static boolean numeric(String field) {
+        try {
+            Double.parseDouble(field.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override public int features() {
+        return this.features;
+    }
+    @Override public int size() {
+        return this.size;
+    }
+    // absolute bulk reads leave the buffers' positions alone, so threads can read at the same time
+    @Override public void read(int from, int count, double[][] inputs, int[] labels) {
+        for (int f = 0; f < this.features; f++) this.columns[f].get(from, inputs[f], 0, count);
+        this.labels.get(from, labels, 0, count);
+    }
+}
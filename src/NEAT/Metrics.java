@@ -0,0 +1,240 @@
+package NEAT;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per generation instrumentation of a {@link Population}: wall time of every phase, how often each
+ * {@link NeuralNetwork.Mutation} was applied, genome size histograms, how often its children were reordered
+ * and its genomes compiled for evaluation, and bytes allocated by the thread running it. Evaluation on
+ * other threads, a fork join pool or remote workers, is not part of the allocated bytes.
+ * Every generation is published as a {@link GenerationEvent} for JFR, through a {@link PopulationMXBean}
+ * registered as {@code NEAT:type=Population,id=N} until {@link Population#close()}, and as a
+ * {@link Generation} snapshot from {@link Population#metrics()}.
+ * <p>
+ * Off unless the JVM is started with {@code -Dneat.metrics=true}. The flag is a constant, so when it is
+ * off the JIT drops every guarded call and a population does not even create its recorder.
+ */
+public final class Metrics implements PopulationMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("neat.metrics");
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final NeuralNetwork.Mutation[] MUTATIONS = NeuralNetwork.Mutation.values();
+
+    private final ObjectName name;
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] mutations = new long[MUTATIONS.length];
+    private Histogram nodes, connections, layers;
+    private long allocated, reorders, compilations;
+    private volatile Generation last;
+
+    Metrics() {
+        this.allocated = allocatedBytes();
+        try {
+            this.name = new ObjectName("NEAT:type=Population,id=" + IDS.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    /** Unregisters the MXBean, once. */
+    void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(this.name)) server.unregisterMBean(this.name);
+        } catch (InstanceNotFoundException e) {
+            // closed concurrently
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public enum Phase {
+        EVALUATE, SPECIATE, SELECT, CROSSOVER, MUTATE, REBUILD
+    }
+
+    void add(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] += nanos;
+    }
+    /** Starts measuring the allocations of a generation on the calling thread, returns the genomes evaluation will compile at most. */
+    int begin(Individual[] individuals) {
+        this.allocated = allocatedBytes();
+        return stale(individuals);
+    }
+    /** Counts the genomes evaluation compiled, stale before it and compiled now. */
+    void compiled(int stale, Individual[] individuals) {
+        this.compilations += stale - stale(individuals);
+    }
+    private static int stale(Individual[] individuals) {
+        int stale = 0;
+        for (Individual individual : individuals) if (!individual.getBrain().compiled()) stale++;
+        return stale;
+    }
+    void reordered(int reorders) {
+        this.reorders += reorders;
+    }
+    void mutated(int applied) {
+        for (; applied != 0; applied &= applied - 1) this.mutations[Integer.numberOfTrailingZeros(applied)]++;
+    }
+    /** Records the genome sizes of the generation about to be replaced. */
+    void sizes(Individual[] individuals) {
+        int[] n = new int[individuals.length], c = new int[individuals.length], l = new int[individuals.length];
+        for (int i = 0; i < individuals.length; i++) {
+            NeuralNetwork brain = individuals[i].getBrain();
+            n[i] = brain.nodes().size();
+            c[i] = brain.connections().size();
+            l[i] = brain.layers();
+        }
+        this.nodes = Histogram.of(n);
+        this.connections = Histogram.of(c);
+        this.layers = Histogram.of(l);
+    }
+    void publish(int generation, double bestFitness) {
+        long allocated = allocatedBytes();
+        Generation g = new Generation(generation, bestFitness, this.nanos.clone(), this.mutations.clone(),
+                this.nodes, this.connections, this.layers, this.reorders, this.compilations, allocated - this.allocated);
+        this.allocated = allocated;
+        this.reorders = 0;
+        this.compilations = 0;
+        Arrays.fill(this.nanos, 0);
+        Arrays.fill(this.mutations, 0);
+        this.last = g;
+
+        GenerationEvent event = new GenerationEvent();
+        if (event.shouldCommit()) {
+            event.generation = g.generation;
+            event.bestFitness = g.bestFitness;
+            event.evaluate = g.nanos(Phase.EVALUATE);
+            event.speciate = g.nanos(Phase.SPECIATE);
+            event.select = g.nanos(Phase.SELECT);
+            event.crossover = g.nanos(Phase.CROSSOVER);
+            event.mutate = g.nanos(Phase.MUTATE);
+            event.rebuild = g.nanos(Phase.REBUILD);
+            event.addConnection = g.mutations(NeuralNetwork.Mutation.ADD_CONNECTION);
+            event.addNode = g.mutations(NeuralNetwork.Mutation.ADD_NODE);
+            event.removeNode = g.mutations(NeuralNetwork.Mutation.REMOVE_NODE);
+            event.meanNodes = g.nodes.mean();
+            event.meanConnections = g.connections.mean();
+            event.maxLayers = g.layers.max();
+            event.reorders = g.reorders;
+            event.compilations = g.compilations;
+            event.allocated = g.allocatedBytes;
+            event.commit();
+        }
+    }
+    public Generation last() {
+        return this.last;
+    }
+
+    // of the calling thread only, other populations and threads of the process allocate at the same time
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean allocation) || !allocation.isThreadAllocatedMemorySupported())
+            return 0;
+        return allocation.getCurrentThreadAllocatedBytes();
+    }
+
+    private Generation lastOrEmpty() {
+        Generation g = this.last;
+        return g == null ? new Generation(0, 0, new long[this.nanos.length], new long[this.mutations.length],
+                Histogram.EMPTY, Histogram.EMPTY, Histogram.EMPTY, 0, 0, 0) : g;
+    }
+    @Override public int getGeneration() {
+        return this.lastOrEmpty().generation;
+    }
+    @Override public double getBestFitness() {
+        return this.lastOrEmpty().bestFitness;
+    }
+    @Override public long[] getPhaseNanos() {
+        return this.lastOrEmpty().phaseNanos.clone();
+    }
+    @Override public long[] getMutationCounts() {
+        return this.lastOrEmpty().mutationCounts.clone();
+    }
+    @Override public double getMeanNodes() {
+        return this.lastOrEmpty().nodes.mean();
+    }
+    @Override public double getMeanConnections() {
+        return this.lastOrEmpty().connections.mean();
+    }
+    @Override public int getMaxLayers() {
+        return this.lastOrEmpty().layers.max();
+    }
+    @Override public long getReorders() {
+        return this.lastOrEmpty().reorders;
+    }
+    @Override public long getCompilations() {
+        return this.lastOrEmpty().compilations;
+    }
+    @Override public long getAllocatedBytes() {
+        return this.lastOrEmpty().allocatedBytes;
+    }
+
+    public record Generation(int generation, double bestFitness, long[] phaseNanos, long[] mutationCounts,
+                             Histogram nodes, Histogram connections, Histogram layers, long reorders, long compilations,
+                             long allocatedBytes) {
+        public long nanos(Phase phase) {
+            return this.phaseNanos[phase.ordinal()];
+        }
+        public long mutations(NeuralNetwork.Mutation mutation) {
+            return this.mutationCounts[mutation.ordinal()];
+        }
+        public long totalNanos() {
+            long total = 0;
+            for (long n : this.phaseNanos) total += n;
+            return total;
+        }
+    }
+
+    /** Bucket {@code b} counts the genomes with a size in {@code [2^(b-1), 2^b)}, bucket 0 the empty ones. */
+    public record Histogram(int[] buckets, double mean, int max) {
+        static final Histogram EMPTY = new Histogram(new int[0], 0, 0);
+
+        static Histogram of(int[] sizes) {
+            int max = 0;
+            long sum = 0;
+            for (int s : sizes) {
+                max = Math.max(max, s);
+                sum += s;
+            }
+            int[] buckets = new int[33 - Integer.numberOfLeadingZeros(max)];
+            for (int s : sizes) buckets[32 - Integer.numberOfLeadingZeros(s)]++;
+            return new Histogram(buckets, sizes.length == 0 ? 0 : sum / (double) sizes.length, max);
+        }
+    }
+
+    @Name("NEAT.Generation")
+    @Label("Generation")
+    @Category("NEAT")
+    static final class GenerationEvent extends Event {
+        @Label("Generation") int generation;
+        @Label("Best Fitness") double bestFitness;
+        @Label("Evaluate") @Timespan long evaluate;
+        @Label("Speciate") @Timespan long speciate;
+        @Label("Select") @Timespan long select;
+        @Label("Crossover") @Timespan long crossover;
+        @Label("Mutate") @Timespan long mutate;
+        @Label("Rebuild") @Timespan long rebuild;
+        @Label("Connections Added") long addConnection;
+        @Label("Nodes Added") long addNode;
+        @Label("Nodes Removed") long removeNode;
+        @Label("Mean Nodes") double meanNodes;
+        @Label("Mean Connections") double meanConnections;
+        @Label("Max Layers") int maxLayers;
+        @Label("Reorders") long reorders;
+        @Label("Compilations") long compilations;
+        @Label("Allocated") @DataAmount long allocated;
+    }
+}
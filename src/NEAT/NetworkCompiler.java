@@ -0,0 +1,204 @@
+package NEAT;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// generates and compiles the classes behind CompiledNetwork
+final class NetworkCompiler {
+    // hidden classes have to be in the package of the lookup defining them
+    private static final String NAME = "NEAT.GeneratedNetwork";
+    // keeps the constant pool, two entries for every distinct weight, well below its 65535 entries
+    private static final int MAX_SIZE = 5000;
+    // links of one method, a node counting as three: at up to 14 bytes of bytecode each a method stays under
+    // the 8000 bytes HotSpot compiles at most (-XX:+DontCompileHugeMethods), bigger ones are only interpreted
+    private static final int PART_SIZE = 480;
+
+    private NetworkCompiler() {
+    }
+
+    static CompiledNetwork compile(NeuralNetwork network) {
+        Phenotype phenotype = Phenotype.compile(network, Activation.APPROXIMATE, Phenotype.Backend.SCALAR);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytecode(NAME, source(phenotype, NAME)), true);
+            return lookup.lookupClass().asSubclass(CompiledNetwork.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("could not define the compiled network", e);
+        }
+    }
+
+    /*
+     * One local per node in evaluation order, each sum starts at 0.0 and adds the links in the order the
+     * phenotype does, so rounding is the same: 0.0 + w * a + w * b + bias is ((0.0 + w * a) + w * b) + bias.
+     * Networks bigger than PART_SIZE are split into methods called one after the other. Values
+     * a later method reads, and a sum cut in two, are handed over in an array indexed like the nodes.
+     */
+    static String source(Phenotype phenotype, String className) {
+        if (phenotype.size() + phenotype.links() > MAX_SIZE)
+            throw new IllegalArgumentException(phenotype.size() + " nodes and " + phenotype.links() + " links are too many to compile");
+        Parts parts = new Parts(phenotype);
+        for (int q = phenotype.numInputs(); q < phenotype.size(); q++) {
+            parts.fit();
+            StringBuilder out = parts.current();
+            out.append("        double s").append(q).append(" = 0.0");
+            for (int e = phenotype.start[q]; e < phenotype.start[q + 1]; e++) {
+                if (parts.full()) {
+                    out.append(";\n        values[").append(q).append("] = s").append(q).append(";\n");
+                    parts.next();
+                    out = parts.current();
+                    out.append("        double s").append(q).append(" = values[").append(q).append("]");
+                }
+                out.append(" + ").append(literal(phenotype.weight[e])).append(" * ").append(parts.value(phenotype.source[e]));
+                parts.used++;
+            }
+            out.append(" + ").append(literal(phenotype.bias[q])).append(";\n");
+            out.append("        double v").append(q).append(" = ").append(activate(phenotype.activation(q), "s" + q)).append(";\n");
+            parts.define(q);
+        }
+        StringBuilder last = parts.current();
+        for (int k = 0; k < phenotype.numOutputs(); k++)
+            last.append("        output[").append(k).append("] = ").append(parts.value(phenotype.outputs[k])).append(";\n");
+
+        int dot = className.lastIndexOf('.');
+        StringBuilder out = new StringBuilder();
+        if (dot >= 0) out.append("package ").append(className, 0, dot).append(";\n\n");
+        out.append("/** Generated from a NEAT genome, ").append(phenotype.size()).append(" nodes and ").append(phenotype.links()).append(" links. */\n");
+        out.append("public final class ").append(className.substring(dot + 1)).append(" implements NEAT.CompiledNetwork {\n");
+        out.append("    @Override public double[] feedforward(double[] input) {\n");
+        out.append("        double[] output = new double[").append(phenotype.numOutputs()).append("];\n");
+        out.append("        this.feedforward(input, output);\n");
+        out.append("        return output;\n");
+        out.append("    }\n");
+        out.append("    @Override public void feedforward(double[] input, double[] output) {\n");
+        if (parts.bodies.size() == 1) out.append(parts.bodies.get(0));
+        else {
+            out.append("        double[] values = new double[").append(phenotype.size()).append("];\n");
+            for (int i = 0; i < parts.bodies.size(); i++) out.append("        part").append(i).append("(input, output, values);\n");
+        }
+        out.append("    }\n");
+        for (int i = 0; parts.bodies.size() > 1 && i < parts.bodies.size(); i++) {
+            out.append("    private static void part").append(i).append("(double[] input, double[] output, double[] values) {\n");
+            out.append(parts.bodies.get(i)).append(parts.exports.get(i));
+            out.append("    }\n");
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+    // the methods being written, and in which one every node got its local
+    private static final class Parts {
+        final List<StringBuilder> bodies = new ArrayList<>(), exports = new ArrayList<>();
+        private final int numInputs;
+        private final int[] part;
+        private final boolean[] exported;
+        int used;
+
+        Parts(Phenotype phenotype) {
+            this.numInputs = phenotype.numInputs();
+            this.part = new int[phenotype.size()];
+            this.exported = new boolean[phenotype.size()];
+            this.next();
+        }
+        StringBuilder current() {
+            return this.bodies.get(this.bodies.size() - 1);
+        }
+        boolean full() {
+            return this.used >= PART_SIZE;
+        }
+        void next() {
+            this.bodies.add(new StringBuilder());
+            this.exports.add(new StringBuilder());
+            this.used = 0;
+        }
+        // a node starts the next method unless it fits with its links, or is the first of this one
+        void fit() {
+            if (this.used > 0 && this.full()) this.next();
+        }
+        void define(int q) {
+            this.part[q] = this.bodies.size() - 1;
+            this.used += 3;
+        }
+        // the expression reading the value of node q here, a local of an earlier method is exported at its end
+        String value(int q) {
+            if (q < this.numInputs) return "input[" + q + "]";
+            int here = this.bodies.size() - 1;
+            if (this.part[q] == here) return "v" + q;
+            if (!this.exported[q]) {
+                this.exported[q] = true;
+                this.exports.get(this.part[q]).append("        values[").append(q).append("] = v").append(q).append(";\n");
+            }
+            return "values[" + q + "]";
+        }
+    }
+    private static String literal(double value) {
+        if (Double.isNaN(value)) return "Double.NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        return Double.toString(value);
+    }
+    // the expressions of the scalar kernels in Activation
+    private static String activate(Activation activation, String x) {
+        if (activation instanceof Activation.Approximate approximate) return switch (approximate) {
+            case TANH -> "NEAT.Activation.Approximate.tanh(" + x + ")";
+            case SIN -> "NEAT.Activation.Approximate.sin(" + x + ")";
+            case COS -> "NEAT.Activation.Approximate.cos(" + x + ")";
+        };
+        return switch ((Activation.Exact) activation) {
+            case SIGMOID -> "1 / (1 + Math.exp(-4.9 * " + x + "))";
+            case IDENTITY -> x;
+            case STEP -> x + " > 0 ? 1 : 0";
+            case TANH -> "Math.tanh(" + x + ")";
+            case RELU -> x + " < 0 ? 0 : " + x;
+            case SIN -> "Math.sin(" + x + ")";
+            case COS -> "Math.cos(" + x + ")";
+        };
+    }
+
+    private static byte[] bytecode(String className, String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) throw new IllegalStateException("compiling networks needs a JDK, this runtime has no Java compiler");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JavaFileObject input = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        try (StandardJavaFileManager standard = javac.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            JavaFileManager files = new ForwardingJavaFileManager<>(standard) {
+                @Override public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(URI.create("bytes:///" + name.replace('.', '/') + kind.extension), kind) {
+                        @Override public OutputStream openOutputStream() {
+                            return bytes;
+                        }
+                    };
+                }
+            };
+            List<String> options = List.of("-classpath", classPath(), "-proc:none", "-g:none");
+            if (!javac.getTask(null, files, diagnostics, options, null, List.of(input)).call())
+                throw new IllegalStateException("could not compile " + className + ": " + diagnostics.getDiagnostics());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    // wherever the NEAT classes were loaded from, a directory or a jar
+    private static String classPath() {
+        CodeSource code = NetworkCompiler.class.getProtectionDomain().getCodeSource();
+        try {
+            if (code != null && code.getLocation() != null) return Path.of(code.getLocation().toURI()).toString();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // not a file, fall back to the class path
+        }
+        return System.getProperty("java.class.path");
+    }
+}
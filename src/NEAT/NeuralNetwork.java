@@ -1,300 +1,764 @@
 package NEAT;
 
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
 
 import static java.lang.Math.*;
-import static NEAT.Example.Settings.RANDOM;
 
+/**
+ * Genome stored in parallel primitive arrays: nodes in list order (evaluation order once
+ * {@link #generateNetwork()} sorted them by layer), connections sorted by innovation number with their
+ * enabled flags in a bit set. {@link Node} and {@link Connection} are views over these arrays, created
+ * on demand. Input nodes have ids {@code [0, numInputs)} and output nodes the {@code numOutputs} ids after.
+ */
 public class NeuralNetwork implements Cloneable {
+    private static final AtomicLong STAMPS = new AtomicLong();
+    private static final LongAdder REORDERS = new LongAdder();
 
-    private final int id;
+    private int id;
     private final int numInputs;
     private final int numOutputs;
-    private final List<Node> nodes;
-    private final List<Connection> connections;
-    private final boolean offSpring;
+    private final InnovationRegistry innovations;
+    private boolean offSpring;
+
+    private int nodeCount;
+    private int[] nodeIndex;
+    private int[] nodeLayer;
+    private byte[] nodeActivation;
+    private double[] nodeBias;
+    // position of every node id in the arrays above, -1 for ids not in this genome
+    private int[] slot;
+
+    private int connectionCount;
+    private int[] innovation;
+    private int[] fromNode;
+    private int[] toNode;
+    private double[] weight;
+    private long[] enabled;
+    // packed endpoints of every connection, sorted for binary search, and the same with the ends swapped
+    private long[] links;
+    private long[] reverse;
+    // number of nodes in other layers every node id is linked with, either way
+    private int[] degree;
+
+    // false once a node was appended below the last layer, until generateNetwork() puts it in place
+    private boolean ordered = true;
+    private int[] layerSizes;
+    private long sumOfSquares;
+    private int linkedPairs;
     private int layers;
     private int nextNode;
-    private NeuralNetwork(int id, int numInputs, int numOutputs) {
-        this(id,numInputs,numOutputs,false);
+    private Phenotype phenotype;
+    private long phenotypeStamp;
+    // times generateNetwork() reordered this genome object, whatever it held at the time, never copied
+    private int reordered;
+    private long stamp;
+    private long hash;
+    private long hashStamp;
+    private NeuralNetwork(int id, int numInputs, int numOutputs, InnovationRegistry innovations, RandomGenerator random) {
+        this(id,numInputs,numOutputs,innovations,false, numInputs + numOutputs, numInputs * numOutputs);
+        this.generateNodes(random);
     }
-    private NeuralNetwork(int id, int numInputs, int numOutputs, boolean offSpring) {
+    private NeuralNetwork(int id, int numInputs, int numOutputs, InnovationRegistry innovations, boolean offSpring, int nodes, int connections) {
         this.id = id;
         this.numInputs = numInputs;
         this.numOutputs = numOutputs;
+        this.innovations = innovations;
         this.offSpring = offSpring;
         this.layers = 2;
         this.nextNode = 0;
-        this.nodes = new ArrayList<>();
-        this.connections = new ArrayList<>();
-
-        if (!offSpring) this.generateNodes();
+        this.nodeIndex = new int[nodes];
+        this.nodeLayer = new int[nodes];
+        this.nodeActivation = new byte[nodes];
+        this.nodeBias = new double[nodes];
+        this.slot = new int[numInputs + numOutputs];
+        Arrays.fill(this.slot, -1);
+        this.degree = new int[numInputs + numOutputs];
+        this.innovation = new int[connections];
+        this.fromNode = new int[connections];
+        this.toNode = new int[connections];
+        this.weight = new double[connections];
+        this.enabled = new long[(connections + 63) >>> 6];
+        this.links = new long[connections];
+        this.reverse = new long[connections];
+        this.layerSizes = new int[this.layers];
+        this.stamp = STAMPS.incrementAndGet();
     }
-    public static NeuralNetwork createNetwork(int numInputs, int numOutputs) {
-        NeuralNetwork n = new NeuralNetwork(0,numInputs,numOutputs);
+    public static NeuralNetwork createNetwork(int numInputs, int numOutputs, InnovationRegistry innovations, RandomGenerator random) {
+        NeuralNetwork n = new NeuralNetwork(0,numInputs,numOutputs,innovations,random);
         n.generateNetwork();
         return n;
     }
 
     public double[] feedforward(double[] input) {
-        this.generateNetwork();
-        this.nodes.forEach(n -> n.inputSum = n.outputValue = 0);
-        for (int i = 0; i< this.numInputs; i++) this.nodes.get(i).outputValue = input[i];
-        double[] result = new double[this.numOutputs];
-        for (int i = 0,k = 0; i< this.nodes.size() && k < this.numOutputs;i++ ){
-            Node n = nodes.get(i);
-            n.engage();
-            if (n.output()) {
-                result[k++] = n.outputValue();
-            }
-        }
-        return result;
+        return this.phenotype().feedforward(input);
+    }
+    public void feedforward(double[] input, double[] output) {
+        this.phenotype().feedforward(input, output);
+    }
+    public void feedforward(double[][] inputs, int count, double[][] outputs) {
+        this.phenotype().feedforward(inputs, count, outputs);
     }
-    private void generateNodes() {
+    public void feedforward(double[][] inputs, int from, int count, double[][] outputs) {
+        this.phenotype().feedforward(inputs, from, count, outputs);
+    }
+    public Phenotype phenotype() {
+        // a pooled genome keeps its phenotype and recompiles it in place once it changed
+        if (this.phenotype == null) this.phenotype = Phenotype.compile(this);
+        else if (this.phenotypeStamp != this.stamp) this.phenotype = this.phenotype.recompile(this);
+        this.phenotypeStamp = this.stamp;
+        return this.phenotype;
+    }
+    private void generateNodes(RandomGenerator random) {
         for (int i = 0; i< this.numInputs; i++){
-            this.nodes.add(new Node(this.nextNode++,0,false));
+            this.addNodeGene(this.nextNode++,0,random.nextInt(7),random.nextDouble(-1,1));
         }
 
         for (int i = 0; i< this.numOutputs;i++) {
-            this.nodes.add(new Node(this.nextNode++,1,true));
+            this.addNodeGene(this.nextNode++,1,random.nextInt(7),random.nextDouble(-1,1));
         }
 
         for (int i = 0; i< this.numInputs; i++){
             for (int j = this.numInputs; j< this.numOutputs+this.numInputs; j++) {
-                double weight = RANDOM.nextDouble() * this.numInputs * sqrt(2. / this.numInputs);
-                Connection c =  new Connection(this.nodes.get(i), this.nodes.get(j), weight);
-                c.enable();
-                this.connections.add(c);
+                double weight = random.nextDouble() * this.numInputs * sqrt(2. / this.numInputs);
+                this.addConnectionGene(i, j, weight, true);
+            }
+        }
+    }
+
+    private void addNodeGene(int index, int layer, int activation, double bias) {
+        if (this.nodeCount == this.nodeIndex.length) {
+            int capacity = max(4, this.nodeCount * 2);
+            this.nodeIndex = Arrays.copyOf(this.nodeIndex, capacity);
+            this.nodeLayer = Arrays.copyOf(this.nodeLayer, capacity);
+            this.nodeActivation = Arrays.copyOf(this.nodeActivation, capacity);
+            this.nodeBias = Arrays.copyOf(this.nodeBias, capacity);
+        }
+        if (index >= this.slot.length) {
+            int length = this.slot.length;
+            this.slot = Arrays.copyOf(this.slot, max(index + 1, length * 2));
+            Arrays.fill(this.slot, length, this.slot.length, -1);
+            this.degree = Arrays.copyOf(this.degree, this.slot.length);
+        }
+        if (layer >= this.layerSizes.length) this.layerSizes = Arrays.copyOf(this.layerSizes, layer + 1);
+        int n = this.nodeCount++;
+        this.nodeIndex[n] = index;
+        this.nodeLayer[n] = layer;
+        this.nodeActivation[n] = (byte) activation;
+        this.nodeBias[n] = bias;
+        this.slot[index] = n;
+        this.degree[index] = 0;
+        if (n > 0 && this.nodeLayer[n - 1] > layer) this.ordered = false;
+        this.sumOfSquares += 2L * this.layerSizes[layer]++ + 1;
+    }
+    private void removeNodeGene(int n) {
+        int layer = this.nodeLayer[n];
+        this.slot[this.nodeIndex[n]] = -1;
+        int tail = --this.nodeCount - n;
+        System.arraycopy(this.nodeIndex, n + 1, this.nodeIndex, n, tail);
+        System.arraycopy(this.nodeLayer, n + 1, this.nodeLayer, n, tail);
+        System.arraycopy(this.nodeActivation, n + 1, this.nodeActivation, n, tail);
+        System.arraycopy(this.nodeBias, n + 1, this.nodeBias, n, tail);
+        for (int i = n; i < this.nodeCount; i++) this.slot[this.nodeIndex[i]] = i;
+        this.sumOfSquares -= 2L * --this.layerSizes[layer] + 1;
+    }
+    private void addConnectionGene(int from, int to, double weight, boolean enabled) {
+        int innovation = this.innovations.innovation(from, to);
+        int c = this.position(innovation);
+        if (this.connectionCount == this.innovation.length) this.growConnections();
+        this.indexConnection(from, to);
+        int tail = this.connectionCount - c;
+        System.arraycopy(this.innovation, c, this.innovation, c + 1, tail);
+        System.arraycopy(this.fromNode, c, this.fromNode, c + 1, tail);
+        System.arraycopy(this.toNode, c, this.toNode, c + 1, tail);
+        System.arraycopy(this.weight, c, this.weight, c + 1, tail);
+        insertBit(this.enabled, c, this.connectionCount + 1);
+        this.connectionCount++;
+        this.setConnection(c, innovation, from, to, weight, enabled);
+    }
+    // connections already in innovation order are appended, their links are indexed by indexLinks()
+    private void appendConnectionGene(int innovation, int from, int to, double weight, boolean enabled) {
+        if (this.connectionCount == this.innovation.length) this.growConnections();
+        this.setConnection(this.connectionCount++, innovation, from, to, weight, enabled);
+    }
+    private void setConnection(int c, int innovation, int from, int to, double weight, boolean enabled) {
+        this.innovation[c] = innovation;
+        this.fromNode[c] = from;
+        this.toNode[c] = to;
+        this.weight[c] = weight;
+        if (enabled) this.enabled[c >>> 6] |= 1L << c;
+        else this.enabled[c >>> 6] &= ~(1L << c);
+    }
+    private void growConnections() {
+        int capacity = max(4, this.connectionCount * 2);
+        this.innovation = Arrays.copyOf(this.innovation, capacity);
+        this.fromNode = Arrays.copyOf(this.fromNode, capacity);
+        this.toNode = Arrays.copyOf(this.toNode, capacity);
+        this.weight = Arrays.copyOf(this.weight, capacity);
+        this.enabled = Arrays.copyOf(this.enabled, (capacity + 63) >>> 6);
+        this.links = Arrays.copyOf(this.links, capacity);
+        this.reverse = Arrays.copyOf(this.reverse, capacity);
+    }
+    private int position(int innovation) {
+        int lo = 0, hi = this.connectionCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.innovation[mid] < innovation) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+    private void indexConnection(int from, int to) {
+        if (this.layerOf(from) != this.layerOf(to) && !this.linked(from, to) && !this.linked(to, from)) this.pairLinked(from, to, 1);
+        insertKey(this.links, this.connectionCount, InnovationRegistry.key(from, to));
+        insertKey(this.reverse, this.connectionCount, InnovationRegistry.key(to, from));
+    }
+    private static void insertKey(long[] keys, int count, long key) {
+        int i = ~Arrays.binarySearch(keys, 0, count, key);
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        keys[i] = key;
+    }
+    private static void removeKey(long[] keys, int count, long key) {
+        int i = Arrays.binarySearch(keys, 0, count, key);
+        System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+    }
+    private void pairLinked(int a, int b, int delta) {
+        this.linkedPairs += delta;
+        this.degree[a] += delta;
+        this.degree[b] += delta;
+    }
+    private void indexLinks() {
+        for (int c = 0; c < this.connectionCount; c++) {
+            this.links[c] = InnovationRegistry.key(this.fromNode[c], this.toNode[c]);
+            this.reverse[c] = InnovationRegistry.key(this.toNode[c], this.fromNode[c]);
+        }
+        Arrays.sort(this.links, 0, this.connectionCount);
+        Arrays.sort(this.reverse, 0, this.connectionCount);
+        this.linkedPairs = 0;
+        for (int n = 0; n < this.nodeCount; n++) this.degree[this.nodeIndex[n]] = 0;
+        for (int c = 0; c < this.connectionCount; c++) {
+            int from = this.fromNode[c], to = this.toNode[c];
+            // a pair linked both ways counts once
+            if (this.layerOf(from) != this.layerOf(to) && !(this.linked(to, from) && to < from)) this.pairLinked(from, to, 1);
+        }
+    }
+    private void removeConnectionGene(int c) {
+        int from = this.fromNode[c], to = this.toNode[c];
+        int tail = --this.connectionCount - c;
+        System.arraycopy(this.innovation, c + 1, this.innovation, c, tail);
+        System.arraycopy(this.fromNode, c + 1, this.fromNode, c, tail);
+        System.arraycopy(this.toNode, c + 1, this.toNode, c, tail);
+        System.arraycopy(this.weight, c + 1, this.weight, c, tail);
+        removeBit(this.enabled, c, this.connectionCount + 1);
+        removeKey(this.links, this.connectionCount + 1, InnovationRegistry.key(from, to));
+        removeKey(this.reverse, this.connectionCount + 1, InnovationRegistry.key(to, from));
+        if (this.layerOf(from) != this.layerOf(to) && !this.linked(from, to) && !this.linked(to, from)) this.pairLinked(from, to, -1);
+    }
+    // drops every connection of node index in one pass over each array, from the first it appears at
+    private void removeConnectionGenes(int index, int[] incoming, int[] outgoing) {
+        int first = this.connectionCount, firstLink = this.keyRange(this.links, index), firstReverse = this.keyRange(this.reverse, index);
+        for (int n : incoming) {
+            first = min(first, this.position(this.innovations.innovation(n, index)));
+            firstLink = min(firstLink, Arrays.binarySearch(this.links, 0, this.connectionCount, InnovationRegistry.key(n, index)));
+        }
+        for (int n : outgoing) {
+            first = min(first, this.position(this.innovations.innovation(index, n)));
+            firstReverse = min(firstReverse, Arrays.binarySearch(this.reverse, 0, this.connectionCount, InnovationRegistry.key(n, index)));
+        }
+        int kept = first;
+        for (int c = first; c < this.connectionCount; c++) {
+            if (this.fromNode[c] == index || this.toNode[c] == index) continue;
+            this.setConnection(kept++, this.innovation[c], this.fromNode[c], this.toNode[c], this.weight[c], this.enabled(c));
+        }
+        compactKeys(this.links, firstLink, this.connectionCount, index);
+        compactKeys(this.reverse, firstReverse, this.connectionCount, index);
+        this.connectionCount = kept;
+        // both lists are sorted by id, a neighbour linked both ways is one pair
+        int layer = this.layerOf(index);
+        for (int i = 0, j = 0; i < incoming.length || j < outgoing.length; ) {
+            int n;
+            if (j == outgoing.length || i < incoming.length && incoming[i] < outgoing[j]) n = incoming[i++];
+            else if (i == incoming.length || outgoing[j] < incoming[i]) n = outgoing[j++];
+            else {
+                n = incoming[i++];
+                j++;
             }
+            if (this.layerOf(n) != layer) this.pairLinked(index, n, -1);
         }
     }
+    private static void compactKeys(long[] keys, int first, int count, int index) {
+        int kept = first;
+        for (int i = first; i < count; i++)
+            if ((int) (keys[i] >>> 32) != index && (int) keys[i] != index) keys[kept++] = keys[i];
+    }
+    // start of the keys whose high half is index, which are the links from index in links and to it in reverse
+    private int keyRange(long[] keys, int index) {
+        int i = Arrays.binarySearch(keys, 0, this.connectionCount, (long) index << 32);
+        return i >= 0 ? i : ~i;
+    }
+    private int[] neighbours(long[] keys, int index) {
+        int from = this.keyRange(keys, index), to = this.keyRange(keys, index + 1);
+        int[] neighbours = new int[to - from];
+        for (int i = from; i < to; i++) neighbours[i - from] = (int) keys[i];
+        return neighbours;
+    }
+    private static void insertBit(long[] bits, int position, int length) {
+        int word = position >>> 6;
+        for (int w = (length - 1) >>> 6; w > word; w--) bits[w] = bits[w] << 1 | bits[w - 1] >>> 63;
+        long low = (1L << position) - 1;
+        bits[word] = bits[word] & low | (bits[word] & ~low) << 1;
+    }
+    private static void removeBit(long[] bits, int position, int length) {
+        int word = position >>> 6, last = (length - 1) >>> 6;
+        long low = (1L << position) - 1;
+        bits[word] = bits[word] & low | bits[word] >>> 1 & ~low;
+        for (int w = word; w < last; w++) {
+            bits[w] |= bits[w + 1] << 63;
+            bits[w + 1] >>>= 1;
+        }
+    }
+    private boolean linked(int from, int to) {
+        return Arrays.binarySearch(this.links, 0, this.connectionCount, InnovationRegistry.key(from, to)) >= 0;
+    }
+    private int layerOf(int index) {
+        return this.nodeLayer[this.slot[index]];
+    }
+    /** View of the node with id {@code index}, null if the genome has no such node. */
+    public Node node(int index) {
+        return index < this.slot.length && this.slot[index] >= 0 ? new Node(this, index) : null;
+    }
+    /**
+     * Sorts the nodes by layer, keeping the order of nodes within a layer. Mutations keep the order
+     * themselves except for the node {@code addNode} appends, so this is a no op unless one was added.
+     */
     public void generateNetwork() {
-        this.nodes.forEach(n -> n.outputConnections.clear());
-        this.connections.forEach(c -> c.fromNode().outputConnections.add(c));
-        this.sortByLayer();
+        if (this.ordered) return;
+        REORDERS.increment();
+        this.reordered++;
+        for (int i = 1; i < this.nodeCount; i++) {
+            int layer = this.nodeLayer[i];
+            if (this.nodeLayer[i - 1] <= layer) continue;
+            int index = this.nodeIndex[i], activation = this.nodeActivation[i];
+            double bias = this.nodeBias[i];
+            int j = i;
+            for (; j > 0 && this.nodeLayer[j - 1] > layer; j--) {
+                this.nodeIndex[j] = this.nodeIndex[j - 1];
+                this.nodeLayer[j] = this.nodeLayer[j - 1];
+                this.nodeActivation[j] = this.nodeActivation[j - 1];
+                this.nodeBias[j] = this.nodeBias[j - 1];
+                this.slot[this.nodeIndex[j]] = j;
+            }
+            this.nodeIndex[j] = index;
+            this.nodeLayer[j] = layer;
+            this.nodeActivation[j] = (byte) activation;
+            this.nodeBias[j] = bias;
+            this.slot[index] = j;
+        }
+        this.ordered = true;
     }
-    private void sortByLayer() {
-        this.nodes.sort(Comparator.comparingInt(n -> n.layer));
+    // moves every node in layer from and above by delta, in layer order these are a suffix of the arrays
+    private void shiftLayers(int from, int delta) {
+        int lo = 0;
+        if (this.ordered) {
+            for (int hi = this.nodeCount; lo < hi; ) {
+                int mid = (lo + hi) >>> 1;
+                if (this.nodeLayer[mid] < from) lo = mid + 1;
+                else hi = mid;
+            }
+        }
+        for (int n = lo; n < this.nodeCount; n++) if (this.nodeLayer[n] >= from) this.nodeLayer[n] += delta;
     }
-    public void mutate() {
-        String mutationType = "";
-        if (RANDOM.nextDouble() < 0.6) {
-            mutationType += " Weight ";
-            this.connections.forEach(Connection::mutateWeight);
+    private int topLayer() {
+        if (this.ordered) return this.nodeLayer[this.nodeCount - 1];
+        int top = 0;
+        for (int n = 0; n < this.nodeCount; n++) top = max(top, this.nodeLayer[n]);
+        return top;
+    }
+    // the genome changed: phenotype and structural hash are stale
+    private void changed() {
+        this.stamp = STAMPS.incrementAndGet();
+    }
+    /** Applies a random set of mutation operators and returns them as a bit mask of {@link Mutation} ordinals. */
+    public int mutate(RandomGenerator random) {
+        int applied = 0;
+        if (random.nextDouble() < 0.6) {
+            applied |= Mutation.WEIGHT.bit();
+            for (int c = 0; c < this.connectionCount; c++) this.weight[c] = perturb(this.weight[c], random);
         }
 
-        if (RANDOM.nextDouble() < 0.6) {
-            mutationType += " Bias ";
-            this.nodes.forEach(Node::mutateBias);
+        if (random.nextDouble() < 0.6) {
+            applied |= Mutation.BIAS.bit();
+            for (int n = 0; n < this.nodeCount; n++) this.nodeBias[n] = perturb(this.nodeBias[n], random);
         }
 
-        if (RANDOM.nextDouble() < 0.4) {
-            mutationType += " Activation ";
-            this.nodes.forEach(Node::mutateActivation);
+        if (random.nextDouble() < 0.4) {
+            applied |= Mutation.ACTIVATION.bit();
+            for (int n = 0; n < this.nodeCount; n++) this.nodeActivation[n] = (byte) random.nextInt(7);
         }
 
 
-        if (RANDOM.nextDouble() < 0.05) {
-            mutationType += " AddConnection ";
-            this.addConnection();
+        if (random.nextDouble() < 0.05) {
+            applied |= Mutation.ADD_CONNECTION.bit();
+            this.addConnection(random);
         }
 
-        if (RANDOM.nextDouble() < 0.05) {
-            mutationType += " AddNode ";
-            this.addNode();
+        if (random.nextDouble() < 0.05) {
+            applied |= Mutation.ADD_NODE.bit();
+            this.addNode(random);
         }
 
-        if (RANDOM.nextDouble() < 0.1) {
-            mutationType += " RemoveNode ";
-            this.removeNode();
+        if (random.nextDouble() < 0.1) {
+            applied |= Mutation.REMOVE_NODE.bit();
+            this.removeNode(random);
         }
 
-        if (RANDOM.nextDouble() < 0.2) {
-            mutationType += " Enabled ";
-            this.mutateEnable();
+        if (random.nextDouble() < 0.2) {
+            applied |= Mutation.ENABLE.bit();
+            this.mutateEnable(random);
         }
 
-        if (RANDOM.nextDouble() < 0.4) {
-            mutationType += " Disabled ";
-            this.mutateDisable();
+        if (random.nextDouble() < 0.4) {
+            applied |= Mutation.DISABLE.bit();
+            this.mutateDisable(random);
         }
-
-
-//        System.out.println(mutationType);
-
+        if (applied != 0) this.changed();
+        return applied;
+    }
+    private static double perturb(double value, RandomGenerator random) {
+        double r = random.nextDouble();
+        if (r < 0.05)
+            return random.nextDouble(-1,1);
+        else
+            return value + random.nextGaussian() / 2;
     }
-    private void removeNode() {
-        int nodeIndex = RANDOM.nextInt(this.nodes.size());
-        Node picked = this.nodes().get(nodeIndex);
-        if (picked.output() || picked.layer() == 0) return;
-        this.nodes().remove(picked);
+    private void removeNode(RandomGenerator random) {
+        int picked = random.nextInt(this.nodeCount);
+        int index = this.nodeIndex[picked], layer = this.nodeLayer[picked];
+        if (this.outputNode(index) || layer == 0) return;
 
-        boolean removeLayer = this.nodes().stream().noneMatch(n -> n.layer == picked.layer());
+        // neighbours by id, read off the sorted link keys
+        int[] incoming = this.neighbours(this.reverse, index);
+        int[] outgoing = this.neighbours(this.links, index);
 
-        List<Node> incoming = this.connections().stream().filter(c -> c.toNode().equals(picked)).map(Connection::fromNode).collect(Collectors.toList());
-        List<Node> outgoing = this.connections().stream().filter(c -> c.fromNode().equals(picked)).map(Connection::toNode).collect(Collectors.toList());
+        this.removeConnectionGenes(index, incoming, outgoing);
+        this.removeNodeGene(picked);
+        boolean removeLayer = this.layerSizes[layer] == 0;
 
-        if (incoming.isEmpty() || outgoing.isEmpty()) {
-            System.err.println("Disconnected node");
-        }
-
-        this.connections().removeIf(c -> c.toNode().equals(picked) || c.fromNode().equals(picked));
-        for (Node n : incoming) {
-            if (connections().stream().noneMatch(c -> c.fromNode().equals(n))) {
-                Node out = outgoing.get(RANDOM.nextInt(outgoing.size()));
-                Connection replacement = new Connection(n,out, RANDOM.nextDouble(),true);
-                this.connections().add(replacement);
+        // neighbours left without links in that direction are reconnected across the removed node
+        for (int n : incoming) {
+            if (this.keyRange(this.links, n) == this.keyRange(this.links, n + 1) && outgoing.length > 0) {
+                int out = outgoing[random.nextInt(outgoing.length)];
+                this.addConnectionGene(n, out, random.nextDouble(), true);
             }
         }
-        for (Node n : outgoing) {
-            if (connections().stream().noneMatch(c -> c.toNode().equals(n))) {
-                Node in = incoming.get(RANDOM.nextInt(incoming.size()));
-                Connection replacement = new Connection(in,n, RANDOM.nextDouble(),true);
-                this.connections().add(replacement);
+        for (int n : outgoing) {
+            if (this.keyRange(this.reverse, n) == this.keyRange(this.reverse, n + 1) && incoming.length > 0) {
+                int in = incoming[random.nextInt(incoming.length)];
+                this.addConnectionGene(in, n, random.nextDouble(), true);
             }
         }
 
         if (removeLayer) {
-            this.nodes().stream().filter(n -> n.layer() > picked.layer()).forEach(n -> n.layer--);
+            this.shiftLayers(layer + 1, -1);
+            System.arraycopy(this.layerSizes, layer + 1, this.layerSizes, layer, this.layerSizes.length - layer - 1);
+            this.layerSizes[this.layerSizes.length - 1] = 0;
             this.layers--;
         }
         this.generateNetwork();
     }
-    private void addNode() {
-        int connectionIndex = RANDOM.nextInt(this.connections.size());
-        Connection picked = this.connections.get(connectionIndex);
-        this.connections.remove(picked);
-        Node newNode = new Node(this.nextNode, picked.fromNode().layer()+1,false);
+    void addNode(RandomGenerator random) {
+        int picked = random.nextInt(this.connectionCount);
+        int from = this.fromNode[picked], to = this.toNode[picked];
+        double weight = this.weight[picked];
+        this.removeConnectionGene(picked);
+        int layer = this.layerOf(from) + 1, activation = random.nextInt(7);
+        double bias = random.nextDouble(-1,1);
 
-        boolean addingLayer = picked.toNode().layer() - picked.fromNode().layer() == 1;
+        boolean addingLayer = this.layerOf(to) - this.layerOf(from) == 1;
         if (addingLayer) {
-            int maxLayer = -1;
-            int newLayer = picked.toNode().layer();
-            for (Node n : this.nodes) {
-                if (n.layer >= newLayer) n.layer++;
-                if (n.layer > maxLayer) maxLayer = n.layer;
-            }
-            this.layers = maxLayer+1;
+            int newLayer = this.layerOf(to);
+            this.shiftLayers(newLayer, 1);
+            this.layers = this.topLayer()+1;
+            if (this.layerSizes.length < this.layers) this.layerSizes = Arrays.copyOf(this.layerSizes, this.layers + 1);
+            System.arraycopy(this.layerSizes, newLayer, this.layerSizes, newLayer + 1, this.layerSizes.length - newLayer - 1);
+            this.layerSizes[newLayer] = 0;
         }
 
 
-        Connection c1 = new Connection(picked.fromNode(),newNode,1,true);
-        Connection c2 = new Connection(newNode,picked.toNode(), picked.weight(),true);
-
-        this.connections.add(c1);
-        this.connections.add(c2);
-        this.nodes.add(newNode);
-        this.nextNode++;
+        int newNode = this.nextNode++;
+        this.addNodeGene(newNode, layer, activation, bias);
+        this.addConnectionGene(from,newNode,1,true);
+        this.addConnectionGene(newNode,to,weight,true);
     }
-    private void addConnection() {
+    void addConnection(RandomGenerator random) {
         if (this.fullyConnected()) return;
-        int n1 = RANDOM.nextInt(this.nodes.size());
-        int n2 = RANDOM.nextInt(this.nodes.size());
-
-        while ((this.nodes.get(n1).layer == this.nodes.get(n2).layer) ||
-                this.nodesConnected(this.nodes.get(n1), this.nodes.get(n2))) {
-            n1 = RANDOM.nextInt(this.nodes.size());
-            n2 = RANDOM.nextInt(this.nodes.size());
-        }
+        // draw the k-th unconnected pair of nodes in different layers instead of retrying random pairs:
+        // every pair is counted from both its nodes, so whole rows are skipped by their number of free
+        // partners and only the row holding the pair is walked
+        long k = random.nextLong(2 * (this.maxLinkedPairs() - this.linkedPairs));
+        for (int n1 = 0; n1 < this.nodeCount; n1++) {
+            int a = this.nodeIndex[n1], la = this.nodeLayer[n1];
+            long free = this.nodeCount - this.layerSizes[la] - this.degree[a];
+            if (k >= free) {
+                k -= free;
+                continue;
+            }
+            for (int n2 = 0; n2 < this.nodeCount; n2++) {
+                int b = this.nodeIndex[n2], lb = this.nodeLayer[n2];
+                if (la == lb || this.linked(a, b) || this.linked(b, a) || k-- > 0) continue;
 
-        if (this.nodes.get(n1).layer > this.nodes.get(n2).layer){
-            var tmp = n1;
-            n1 = n2;
-            n2 = tmp;
+                this.addConnectionGene(
+                        la < lb ? a : b,
+                        la < lb ? b : a,
+                        random.nextDouble() * this.numInputs * sqrt(2./ this.numInputs),
+                        true);
+                this.generateNetwork();
+                return;
+            }
         }
-        Connection newConnection = new Connection(
-                this.nodes.get(n1),
-                this.nodes.get(n2),
-                RANDOM.nextDouble() * this.numInputs * sqrt(2./ this.numInputs));
-
-        newConnection.enable();
-        this.connections.add(newConnection);
-        this.generateNetwork();
     }
-    private void mutateEnable() {
-        this.connections.get(RANDOM.nextInt(connections.size())).enable();
+    private void mutateEnable(RandomGenerator random) {
+        int c = random.nextInt(this.connectionCount);
+        this.enabled[c >>> 6] |= 1L << c;
     }
-    private void mutateDisable() {
-        Connection c = this.connections.get(RANDOM.nextInt(connections.size()));
-        if (!c.toNode().output()) c.disable();
+    private void mutateDisable(RandomGenerator random) {
+        int c = random.nextInt(this.connectionCount);
+        if (!this.outputNode(this.toNode[c])) this.enabled[c >>> 6] &= ~(1L << c);
     }
-    private int getIndex(int node) {
-        return IntStream.range(0, this.nodes.size()).
-                filter(i -> this.nodes.get(i).index() == node).
-                findFirst().orElse(-1);
+    /**
+     * 64 bit hash of everything evaluation depends on: nodes in evaluation order with their layer,
+     * activation and bias, and the enabled connections with their weight. Genomes with equal hashes
+     * compute the same outputs bit for bit, barring a collision (about 1 in 2^64 per pair).
+     */
+    public long structuralHash() {
+        if (this.hashStamp == this.stamp) return this.hash;
+        long h = mix(this.numInputs, this.numOutputs);
+        for (int n = 0; n < this.nodeCount; n++) {
+            h = mix(h, (long) this.nodeIndex[n] << 32 | this.nodeLayer[n]);
+            h = mix(h, this.nodeActivation[n] << 1 | (this.outputNode(this.nodeIndex[n]) ? 1 : 0));
+            h = mix(h, Double.doubleToLongBits(this.nodeBias[n]));
+        }
+        for (int c = 0; c < this.connectionCount; c++) {
+            if (!this.enabled(c)) continue;
+            h = mix(h, InnovationRegistry.key(this.fromNode[c], this.toNode[c]));
+            h = mix(h, Double.doubleToLongBits(this.weight[c]));
+        }
+        this.hash = h;
+        this.hashStamp = this.stamp;
+        return h;
     }
-    private int commonConnection(int innovation, List<Connection> connections) {
-        return IntStream.range(0,connections.size()).
-                filter(i -> connections.get(i).innovationNumber() == innovation).
-                findFirst().orElse(-1);
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        h = (h ^ h >>> 30) * 0xBF58476D1CE4E5B9L;
+        return h ^ h >>> 31;
     }
-    private int calculateWeight() {
-        return this.connections.size() + this.nodes.size();
+    int calculateWeight() {
+        return this.connectionCount + this.nodeCount;
     }
     public boolean nodesConnected(Node n1, Node n2) {
-        return this.connections.stream().anyMatch(c ->
-                (c.fromNode().equals(n1) && c.toNode().equals(n2)) ||
-                        (c.fromNode().equals(n2) && c.toNode().equals(n1)));
+        return this.linked(n1.index, n2.index) || this.linked(n2.index, n1.index);
     }
     public boolean fullyConnected() {
-        int maxConnections = 0;
-        double[] nodesPerLayer = new double[this.nodes.size()];
-        Arrays.fill(nodesPerLayer,-1);
-
-        this.nodes.forEach(n ->  {
-            if (nodesPerLayer[n.layer] < 0) nodesPerLayer[n.layer] = 1;
-            else nodesPerLayer[n.layer] ++;
-        });
-
-        for (int i = 0; i< this.layers-1; i++) {
-            for (int j = i+1; j< this.layers; j++){
-                maxConnections+= nodesPerLayer[i]*nodesPerLayer[j];
-            }
-        }
-
-        return maxConnections == this.connections.size();
+        return this.linkedPairs >= this.maxLinkedPairs();
     }
-    public NeuralNetwork crossover(NeuralNetwork partner) {
-        NeuralNetwork offSpring = new NeuralNetwork(
-                max(this.id,partner.id)+1,
-                this.numInputs,
-                this.numOutputs,
-                true
-        );
+    private long maxLinkedPairs() {
+        // pairs of nodes in different layers: (n^2 - sum of squared layer sizes) / 2
+        long n = this.nodeCount;
+        return (n * n - this.sumOfSquares) / 2;
+    }
+    public NeuralNetwork crossover(NeuralNetwork partner, RandomGenerator random) {
+        return this.crossover(partner, random, null);
+    }
+    /**
+     * Breeds the offspring into {@code target}'s arrays instead of new ones, {@code target} is overwritten
+     * and returned. It must be neither parent and share their shape and innovation registry.
+     */
+    public NeuralNetwork crossover(NeuralNetwork partner, RandomGenerator random, NeuralNetwork target) {
+        NeuralNetwork offSpring;
+        if (target == null) {
+            offSpring = new NeuralNetwork(
+                    max(this.id,partner.id)+1,
+                    this.numInputs,
+                    this.numOutputs,
+                    this.innovations,
+                    true,
+                    this.nodeCount,
+                    this.connectionCount
+            );
+            offSpring.slot = new int[this.slot.length];
+            offSpring.degree = new int[this.slot.length];
+            Arrays.fill(offSpring.slot, -1);
+        } else {
+            if (target == this || target == partner) throw new IllegalArgumentException("cannot breed into a parent");
+            offSpring = target.reset(this, max(this.id,partner.id)+1, true, this.nodeCount, this.connectionCount, this.slot.length);
+        }
         offSpring.nextNode = this.nextNode;
 
-        for (int i = 0; i< this.nodes.size(); i++) {
-            Node n = this.nodes.get(i).clone();
-            assert n != null;
-            if (n.output()) {
-                Node partnerNode = partner.nodes.get(partner.getIndex(n.index()));
-                if (RANDOM.nextDouble() > 0.5){
-                    n.activationFunction = partnerNode.activationFunction;
-                    n.bias = partnerNode.bias;
+        for (int n = 0; n < this.nodeCount; n++) {
+            int index = this.nodeIndex[n], activation = this.nodeActivation[n];
+            double bias = this.nodeBias[n];
+            if (this.outputNode(index)) {
+                int partnerNode = partner.slot[index];
+                if (random.nextDouble() > 0.5){
+                    activation = partner.nodeActivation[partnerNode];
+                    bias = partner.nodeBias[partnerNode];
                 }
             }
-            offSpring.nodes.add(n);
+            offSpring.addNodeGene(index, this.nodeLayer[n], activation, bias);
         }
 
-        for(int i = 0; i < this.connections.size(); i++) {
-            int index = this.commonConnection(this.connections.get(i).innovationNumber(), partner.connections);
+        // both genomes are sorted by innovation number, so matching genes are found in one merge pass
+        for(int i = 0, j = 0; i < this.connectionCount; i++) {
+            while (j < partner.connectionCount && partner.innovation[j] < this.innovation[i]) j++;
 
-            Connection oldC;
-            if(index != -1) oldC = Math.random() > 0.5 ? this.connections.get(i) : partner.connections.get(index);
-            else oldC = this.connections.get(i);
-
-            Node fromNode = offSpring.nodes.get(offSpring.getIndex(oldC.fromNode().index()));
-            Node toNode = offSpring.nodes.get(offSpring.getIndex(oldC.toNode().index()));
+            NeuralNetwork parent = this;
+            int c = i;
+            if(j < partner.connectionCount && partner.innovation[j] == this.innovation[i] && random.nextDouble() <= 0.5) {
+                parent = partner;
+                c = j;
+            }
 
-            if(fromNode!= null && toNode != null)
-                offSpring.connections.add(new Connection(fromNode, toNode,oldC.weight(),true));
+            int from = parent.fromNode[c], to = parent.toNode[c];
+            if(offSpring.contains(from) && offSpring.contains(to))
+                offSpring.appendConnectionGene(parent.innovation[c], from, to, parent.weight[c], true);
         }
+        offSpring.indexLinks();
 
         offSpring.layers = this.layers;
         return offSpring;
     }
+    private boolean contains(int index) {
+        return index < this.slot.length && this.slot[index] >= 0;
+    }
+
+    /** Deep copy sharing nothing but the innovation registry, with its own phenotype and stamp. */
+    public NeuralNetwork copy() {
+        return new NeuralNetwork(this.id, this.numInputs, this.numOutputs, this.innovations, this.offSpring, 0, 0).copyFrom(this);
+    }
+    /** Overwrites this genome with a deep copy of {@code other}, reusing its arrays where they are large enough. */
+    public NeuralNetwork copyFrom(NeuralNetwork other) {
+        if (other == this) return this;
+        this.reset(other, other.id, other.offSpring, other.nodeCount, other.connectionCount, other.slot.length);
+        this.layers = other.layers;
+        this.nextNode = other.nextNode;
+        this.nodeCount = other.nodeCount;
+        System.arraycopy(other.nodeIndex, 0, this.nodeIndex, 0, other.nodeCount);
+        System.arraycopy(other.nodeLayer, 0, this.nodeLayer, 0, other.nodeCount);
+        System.arraycopy(other.nodeActivation, 0, this.nodeActivation, 0, other.nodeCount);
+        System.arraycopy(other.nodeBias, 0, this.nodeBias, 0, other.nodeCount);
+        System.arraycopy(other.slot, 0, this.slot, 0, other.slot.length);
+        System.arraycopy(other.degree, 0, this.degree, 0, other.slot.length);
+        this.connectionCount = other.connectionCount;
+        System.arraycopy(other.innovation, 0, this.innovation, 0, other.connectionCount);
+        System.arraycopy(other.fromNode, 0, this.fromNode, 0, other.connectionCount);
+        System.arraycopy(other.toNode, 0, this.toNode, 0, other.connectionCount);
+        System.arraycopy(other.weight, 0, this.weight, 0, other.connectionCount);
+        System.arraycopy(other.enabled, 0, this.enabled, 0, (other.connectionCount + 63) >>> 6);
+        System.arraycopy(other.links, 0, this.links, 0, other.connectionCount);
+        System.arraycopy(other.reverse, 0, this.reverse, 0, other.connectionCount);
+        if (this.layerSizes.length < other.layerSizes.length) this.layerSizes = other.layerSizes.clone();
+        else System.arraycopy(other.layerSizes, 0, this.layerSizes, 0, other.layerSizes.length);
+        this.sumOfSquares = other.sumOfSquares;
+        this.linkedPairs = other.linkedPairs;
+        this.ordered = other.ordered;
+        return this;
+    }
+    // empties the genome for reuse, growing the arrays that are too small for what will be put in
+    private NeuralNetwork reset(NeuralNetwork like, int id, boolean offSpring, int nodes, int connections, int slots) {
+        if (like.numInputs != this.numInputs || like.numOutputs != this.numOutputs || like.innovations != this.innovations)
+            throw new IllegalArgumentException("genomes of different shapes or innovation registries");
+        this.id = id;
+        this.offSpring = offSpring;
+        this.nodeCount = 0;
+        this.connectionCount = 0;
+        if (this.nodeIndex.length < nodes) {
+            this.nodeIndex = new int[nodes];
+            this.nodeLayer = new int[nodes];
+            this.nodeActivation = new byte[nodes];
+            this.nodeBias = new double[nodes];
+        }
+        if (this.slot.length < slots) {
+            this.slot = new int[slots];
+            this.degree = new int[slots];
+        }
+        Arrays.fill(this.slot, -1);
+        if (this.innovation.length < connections) {
+            this.innovation = new int[connections];
+            this.fromNode = new int[connections];
+            this.toNode = new int[connections];
+            this.weight = new double[connections];
+            this.enabled = new long[(connections + 63) >>> 6];
+            this.links = new long[connections];
+            this.reverse = new long[connections];
+        }
+        Arrays.fill(this.layerSizes, 0);
+        this.sumOfSquares = 0;
+        this.linkedPairs = 0;
+        this.layers = 2;
+        this.nextNode = 0;
+        this.ordered = true;
+        this.changed();
+        return this;
+    }
+    /** See {@link GenomeCodec} for the layout. */
+    void write(GenomeCodec.Output out) {
+        out.varint(this.id);
+        out.varint(this.numInputs);
+        out.varint(this.numOutputs);
+        out.varint(this.layers);
+        out.varint(this.nextNode);
+        out.varint(this.offSpring ? 1 : 0);
+        out.varint(this.nodeCount);
+        int previous = 0;
+        for (int n = 0; n < this.nodeCount; n++) {
+            out.zigzag(this.nodeIndex[n] - previous);
+            out.varint(this.nodeLayer[n]);
+            out.varint((long) this.nodeActivation[n] << 1 | (this.outputNode(this.nodeIndex[n]) ? 1 : 0));
+            out.bits(this.nodeBias[n]);
+            previous = this.nodeIndex[n];
+        }
+        out.varint(this.connectionCount);
+        int innovation = 0;
+        for (int c = 0; c < this.connectionCount; c++) {
+            out.varint(this.innovation[c] - innovation);
+            out.varint(this.fromNode[c]);
+            out.varint((long) this.toNode[c] << 1 | (this.enabled(c) ? 1 : 0));
+            out.bits(this.weight[c]);
+            innovation = this.innovation[c];
+        }
+    }
+    static NeuralNetwork read(ByteBuffer in, InnovationRegistry innovations) {
+        int id = (int) GenomeCodec.varint(in);
+        int numInputs = (int) GenomeCodec.varint(in);
+        int numOutputs = (int) GenomeCodec.varint(in);
+        int layers = (int) GenomeCodec.varint(in);
+        int nextNode = (int) GenomeCodec.varint(in);
+        boolean offSpring = GenomeCodec.varint(in) != 0;
+        int nodes = (int) GenomeCodec.varint(in);
+        NeuralNetwork network = new NeuralNetwork(id, numInputs, numOutputs, innovations, offSpring, nodes, 0);
+        network.layers = layers;
+        network.nextNode = nextNode;
+        for (int i = 0, index = 0; i < nodes; i++) {
+            index += (int) GenomeCodec.zigzag(in);
+            int layer = (int) GenomeCodec.varint(in);
+            long packed = GenomeCodec.varint(in);
+            if (((packed & 1) != 0) != network.outputNode(index)) throw new IllegalArgumentException("node " + index + " has the wrong kind");
+            network.addNodeGene(index, layer, (int) (packed >>> 1), GenomeCodec.bits(in));
+        }
+        for (int i = 0, count = (int) GenomeCodec.varint(in), innovation = 0; i < count; i++) {
+            innovation += (int) GenomeCodec.varint(in);
+            int from = (int) GenomeCodec.varint(in);
+            long packed = GenomeCodec.varint(in);
+            int to = (int) (packed >>> 1);
+            if (!network.contains(from) || !network.contains(to)) throw new IllegalArgumentException("connection " + innovation + " links a missing node");
+            network.appendConnectionGene(innovation, from, to, GenomeCodec.bits(in), (packed & 1) != 0);
+        }
+        network.indexLinks();
+        return network;
+    }
 
     @Override public String toString() {
         return """
@@ -306,192 +770,234 @@ public class NeuralNetwork implements Cloneable {
                     layers=%d,
                     offSpring=%s
                     connections=%s,
-                }""".formatted(id, numInputs, numOutputs, nodes.size(), layers, offSpring, connections);
+                }""".formatted(id, numInputs, numOutputs, nodeCount, layers, offSpring, connections());
     }
+    /** Same as {@link #copy()}, the arrays are never shared. */
     @Override public NeuralNetwork clone() {
-        try {
-            NeuralNetwork clone = (NeuralNetwork) super.clone();
-            clone.generateNetwork();
-            return clone;
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return this.copy();
     }
 
     public int layers() {
         return this.layers;
     }
+    /** Identifies the current state of the genome, a new stamp is drawn whenever the genome changes. */
+    public long stamp() {
+        return this.stamp;
+    }
+    /** Times {@link #generateNetwork()} had nodes to put back in layer order, over all genomes of the process. */
+    public static long reorders() {
+        return REORDERS.sum();
+    }
+    int reordered() {
+        return this.reordered;
+    }
+    // phenotype() would return without compiling
+    boolean compiled() {
+        return this.phenotype != null && this.phenotypeStamp == this.stamp;
+    }
+    public int numInputs() {
+        return this.numInputs;
+    }
+    public int numOutputs() {
+        return this.numOutputs;
+    }
+    /** Views of the nodes in list order, reading through to the genome. */
     public List<Node> nodes() {
-        return this.nodes;
+        return new AbstractList<>() {
+            @Override public Node get(int i) {
+                Objects.checkIndex(i, NeuralNetwork.this.nodeCount);
+                return new Node(NeuralNetwork.this, NeuralNetwork.this.nodeIndex[i]);
+            }
+            @Override public int size() {
+                return NeuralNetwork.this.nodeCount;
+            }
+        };
     }
+    /** Views of the connections in innovation order, reading through to the genome. */
     public List<Connection> connections() {
-        return this.connections;
+        return new AbstractList<>() {
+            @Override public Connection get(int i) {
+                Objects.checkIndex(i, NeuralNetwork.this.connectionCount);
+                return new Connection(NeuralNetwork.this, NeuralNetwork.this.innovation[i]);
+            }
+            @Override public int size() {
+                return NeuralNetwork.this.connectionCount;
+            }
+        };
     }
 
-    public static final class Node implements Cloneable {
+    // positional access for the phenotype compiler and speciation, without views
+    int nodeCount() {
+        return this.nodeCount;
+    }
+    int nodeIndex(int n) {
+        return this.nodeIndex[n];
+    }
+    int nodeLayer(int n) {
+        return this.nodeLayer[n];
+    }
+    int nodeActivation(int n) {
+        return this.nodeActivation[n];
+    }
+    double nodeBias(int n) {
+        return this.nodeBias[n];
+    }
+    boolean outputNode(int index) {
+        return index >= this.numInputs && index < this.numInputs + this.numOutputs;
+    }
+    int connectionCount() {
+        return this.connectionCount;
+    }
+    int innovation(int c) {
+        return this.innovation[c];
+    }
+    int fromNode(int c) {
+        return this.fromNode[c];
+    }
+    int toNode(int c) {
+        return this.toNode[c];
+    }
+    double weight(int c) {
+        return this.weight[c];
+    }
+    boolean enabled(int c) {
+        return (this.enabled[c >>> 6] & 1L << c) != 0;
+    }
+
+    public enum Mutation {
+        WEIGHT, BIAS, ACTIVATION, ADD_CONNECTION, ADD_NODE, REMOVE_NODE, ENABLE, DISABLE;
+
+        public int bit() {
+            return 1 << this.ordinal();
+        }
+    }
+
+    /** View of a node by id. Reading a node that was removed from the genome throws. */
+    public static final class Node {
+        private final NeuralNetwork network;
         private final int index;
-        private int layer;
-        private final boolean output;
-        private final List<Connection> outputConnections;
-        private double inputSum;
-        private double outputValue;
-        private int activationFunction;
-        private double bias;
-        private Node(int index, int layer, boolean output) {
+        private Node(NeuralNetwork network, int index) {
+            this.network = network;
             this.index = index;
-            this.layer = layer;
-            this.output = output;
-            this.inputSum = 0;
-            this.outputValue = 0;
-            this.activationFunction = RANDOM.nextInt(7);
-            this.bias = RANDOM.nextDouble(-1,1);
-            this.outputConnections = new ArrayList<>();
+        }
+        private int at() {
+            int n = this.index < this.network.slot.length ? this.network.slot[this.index] : -1;
+            if (n < 0) throw new IllegalStateException("node " + this.index + " is no longer in the genome");
+            return n;
         }
 
         public int index() {
             return index;
         }
         public int layer() {
-            return layer;
+            return this.network.nodeLayer[this.at()];
         }
         public boolean output() {
-            return output;
+            return this.network.outputNode(this.index);
         }
-        public double outputValue() {
-            return outputValue;
+        public double bias() {
+            return this.network.nodeBias[this.at()];
         }
-        public double inputSum() {
-            return inputSum;
+        public void mutateBias(RandomGenerator random) {
+            int n = this.at();
+            this.network.nodeBias[n] = perturb(this.network.nodeBias[n], random);
+            this.network.changed();
         }
-        public void mutateBias() {
-            double r = random();
-            if (r < 0.05)
-                this.bias = RANDOM.nextDouble(-1,1);
-            else
-                this.bias += RANDOM.nextGaussian() / 2;
-        }
-        public void mutateActivation() {
-            this.activationFunction = RANDOM.nextInt(7);
+        public void mutateActivation(RandomGenerator random) {
+            this.network.nodeActivation[this.at()] = (byte) random.nextInt(7);
+            this.network.changed();
         }
         public boolean isConnectedTo(Node node) {
-            if (node.layer() == this.layer) return false;
-            if (node.layer < this.layer)
-                return node.outputConnections.stream().anyMatch(c -> c.toNode().equals(this));
+            if (node.layer() == this.layer()) return false;
+            if (node.layer() < this.layer())
+                return this.network.linked(node.index, this.index);
             else
-                return this.outputConnections.stream().anyMatch(c -> c.toNode().equals(node));
+                return this.network.linked(this.index, node.index);
         }
         public List<Connection> outputConnections() {
-            return outputConnections;
+            return this.adjacent(this.network.fromNode);
+        }
+        public List<Connection> inputConnections() {
+            return this.adjacent(this.network.toNode);
+        }
+        private List<Connection> adjacent(int[] end) {
+            List<Connection> adjacent = new ArrayList<>();
+            for (int c = 0; c < this.network.connectionCount; c++)
+                if (end[c] == this.index) adjacent.add(new Connection(this.network, this.network.innovation[c]));
+            return adjacent;
         }
 
         @Override public boolean equals(Object obj) {
             if (obj == this) return true;
             if (obj == null || obj.getClass() != this.getClass()) return false;
             var that = (Node) obj;
-            return this.index == that.index &&
-                    this.layer == that.layer &&
-                    this.output == that.output;
+            return this.network == that.network && this.index == that.index;
         }
         @Override public int hashCode() {
-            return Objects.hash(index, layer, output);
+            return Integer.hashCode(index);
         }
         @Override public String toString() {
-            var c = outputConnections.stream().map(conn -> conn.toNode().index()).collect(Collectors.toList());
+            var c = this.outputConnections().stream().map(conn -> conn.toNode().index()).toList();
             return ("""
                     Node {
                                 index=%d,
                                 layer=%d,
                                 output=%s,
                                 outputConnections=%s,
-                                inputSum=%s,
-                                outputValue=%s,
                                 activationFunction=%d,
                                 bias=%s
-                            }""").formatted(index, layer, output, c, inputSum, outputValue, activationFunction, bias);
-        }
-        @Override public Node clone() {
-            try {
-                Node n = (Node) super.clone();
-                n.inputSum = this.inputSum;
-                n.outputValue = this.outputValue;
-                n.activationFunction = this.activationFunction;
-                n.bias = this.bias;
-                n.outputConnections.clear();
-                n.outputConnections.addAll(this.outputConnections);
-                return n;
-            } catch (CloneNotSupportedException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
-        public void engage() {
-            if (this.layer != 0)
-                this.outputValue = this.activation(this.inputSum + this.bias);
-
-            for (Connection c : outputConnections){
-                if (c.enabled()) c.toNode().inputSum += c.weight() * this.outputValue;
-            }
+                            }""").formatted(index, layer(), output(), c, activationKey(), bias());
         }
         public double activation(double x) {
-            switch (activationFunction) {
-                case 1 -> { return x; } //Identity
-                case 2 -> { return x > 0 ? 1 : 0; } //Step
-                case 3 -> { return tanh(x); } //Tanh
-                case 4 -> { return x < 0 ? 0 : x; } //ReLu
-                case 5 -> { return sin(x);} //Sin
-                case 6 -> { return cos(x);} //Sin
-                default -> { //Sigmoid
-                    return 1 / (1 + Math.pow(Math.E, -4.9 * x));
-                }
-            }
+            return Activation.of(this.activationKey()).apply(x);
         }
         public int activationKey() {
-            return this.activationFunction;
+            return this.network.nodeActivation[this.at()];
         }
     }
-    public static final class Connection implements Cloneable {
-        private final Node fromNode;
-        private final Node toNode;
-        private double weight;
-        private boolean enabled;
+    /** View of a connection by innovation number. Reading a connection that was removed from the genome throws. */
+    public static final class Connection {
+        private final NeuralNetwork network;
+        private final int innovation;
 
-        private Connection(Node fromNode, Node toNode, double weight) {
-            this(fromNode,toNode,weight,false);
+        private Connection(NeuralNetwork network, int innovation) {
+            this.network = network;
+            this.innovation = innovation;
         }
-
-        private Connection(Node fromNode, Node toNode, double weight, boolean enabled) {
-            this.fromNode = fromNode;
-            this.toNode = toNode;
-            this.weight = weight;
-            this.enabled = enabled;
+        private int at() {
+            int c = this.network.position(this.innovation);
+            if (c == this.network.connectionCount || this.network.innovation[c] != this.innovation)
+                throw new IllegalStateException("connection " + this.innovation + " is no longer in the genome");
+            return c;
         }
 
-        public void mutateWeight() {
-            double r = random();
-            if (r < 0.05)
-                this.weight = RANDOM.nextDouble(-1,1);
-            else
-                this.weight += RANDOM.nextGaussian() / 2;
+        public void mutateWeight(RandomGenerator random) {
+            int c = this.at();
+            this.network.weight[c] = perturb(this.network.weight[c], random);
+            this.network.changed();
         }
         public int innovationNumber() {
-            int i = this.fromNode.index();
-            int j = this.toNode.index();
-            return ((i+j-2) * (i+j-1) / 2 ) + i;
+            return this.innovation;
         }
         public void enable() {
-            this.enabled = true;
+            int c = this.at();
+            this.network.enabled[c >>> 6] |= 1L << c;
+            this.network.changed();
+        }
+        public void disable() {
+            int c = this.at();
+            this.network.enabled[c >>> 6] &= ~(1L << c);
+            this.network.changed();
         }
-        public void disable() {this.enabled = false;}
-        public boolean enabled() { return this.enabled;}
+        public boolean enabled() { return this.network.enabled(this.at());}
         public Node fromNode() {
-            return fromNode;
+            return new Node(this.network, this.network.fromNode[this.at()]);
         }
         public Node toNode() {
-            return toNode;
+            return new Node(this.network, this.network.toNode[this.at()]);
         }
         public double weight() {
-            return weight;
+            return this.network.weight[this.at()];
         }
 
 
@@ -499,12 +1005,10 @@ public class NeuralNetwork implements Cloneable {
             if (obj == this) return true;
             if (obj == null || obj.getClass() != this.getClass()) return false;
             var that = (Connection) obj;
-            return Objects.equals(this.fromNode, that.fromNode) &&
-                    Objects.equals(this.toNode, that.toNode) &&
-                    Double.doubleToLongBits(this.weight) == Double.doubleToLongBits(that.weight);
+            return this.network == that.network && this.innovation == that.innovation;
         }
         @Override public int hashCode() {
-            return Objects.hash(fromNode, toNode, weight);
+            return Integer.hashCode(innovation);
         }
 
         @Override
@@ -515,19 +1019,7 @@ public class NeuralNetwork implements Cloneable {
                             toNode = %s,
                             weight = %s,
                             enabled = %s
-                        }""".formatted(fromNode, toNode, weight, enabled);
-        }
-
-        @Override
-        protected Connection clone()  {
-            try {
-                Connection clone = (Connection) super.clone();
-                clone.enabled = this.enabled;
-                return clone;
-            } catch (CloneNotSupportedException e) {
-                e.printStackTrace();
-            }
-            return null;
+                        }""".formatted(fromNode(), toNode(), weight(), enabled());
         }
     }
 
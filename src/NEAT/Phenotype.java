@@ -0,0 +1,368 @@
+package NEAT;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.Math.*;
+
+public final class Phenotype {
+    static final int BLOCK = 256;
+    // one block of columns per thread instead of per phenotype, which would cost 2 KB per node
+    private static final ThreadLocal<double[][]> BLOCKS = ThreadLocal.withInitial(() -> new double[0][]);
+    /** Whether compiling simplifies, turn it off with {@code -Dneat.simplify=false} to compare. */
+    static final boolean SIMPLIFY = !"false".equals(System.getProperty("neat.simplify"));
+    final int numInputs;
+    int numOutputs;
+    int size;
+    private int links;
+    private int removedNodes, removedLinks, foldedNodes;
+    int[] start = new int[1];
+    int[] source = new int[0];
+    double[] weight = new double[0];
+    double[] bias = new double[0];
+    private Activation[] activation = new Activation[0];
+    int[] outputs = new int[0];
+    private double[] values = new double[0];
+    Backend backend;
+    // Activation.Exact ordinal of every node, for the vector kernels
+    byte[] kind;
+    float[] weight32;
+    float[] bias32;
+
+    /**
+     * How blocks of samples are evaluated. The vector backends use {@code jdk.incubator.vector}: each
+     * connection multiplies and adds a whole vector of samples at once and activations are computed
+     * lane wise. They need the JVM to run with {@code --add-modules jdk.incubator.vector}, without it
+     * phenotypes fall back to {@link #SCALAR}. Select one with {@code -Dneat.vector=double} or {@code float}.
+     */
+    public enum Backend {
+        SCALAR,
+        /** Same sums as {@link #SCALAR}, activations from the vector math library, which may differ in the last bit. */
+        VECTOR,
+        /** Computes in float32: twice the lanes and half the memory traffic, outputs differ by up to about 1e-5 of their magnitude. */
+        VECTOR_FLOAT;
+
+        public static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        public static final Backend DEFAULT = fromProperty();
+
+        private static Backend fromProperty() {
+            String value = System.getProperty("neat.vector", "");
+            Backend backend = switch (value) {
+                case "" -> SCALAR;
+                case "double" -> VECTOR;
+                case "float" -> VECTOR_FLOAT;
+                default -> throw new IllegalArgumentException("neat.vector must be double or float, not " + value);
+            };
+            if (backend != SCALAR && !VECTOR_AVAILABLE)
+                System.err.println("neat.vector=" + value + " needs --add-modules jdk.incubator.vector, evaluating scalar");
+            return backend.orScalar();
+        }
+        /** This backend, or {@link #SCALAR} if it cannot run in this JVM. */
+        public Backend orScalar() {
+            return this == SCALAR || VECTOR_AVAILABLE ? this : SCALAR;
+        }
+    }
+
+    private Phenotype(int numInputs) {
+        this.numInputs = numInputs;
+    }
+
+    public static Phenotype compile(NeuralNetwork network) {
+        return compile(network, Activation.APPROXIMATE);
+    }
+    /** @param approximate use the {@link Activation.Approximate} kernels where there is one */
+    public static Phenotype compile(NeuralNetwork network, boolean approximate) {
+        return compile(network, approximate, Backend.DEFAULT);
+    }
+    /** @param backend evaluates batches, {@code approximate} only applies to the scalar paths */
+    public static Phenotype compile(NeuralNetwork network, boolean approximate, Backend backend) {
+        Phenotype phenotype = new Phenotype(network.numInputs());
+        phenotype.load(network, approximate, backend.orScalar());
+        return phenotype;
+    }
+    /** Compiles {@code network} into this phenotype's arrays, growing them only when they are too small. */
+    Phenotype recompile(NeuralNetwork network) {
+        if (network.numInputs() != this.numInputs) return compile(network);
+        this.load(network, Activation.APPROXIMATE, Backend.DEFAULT);
+        return this;
+    }
+    private void load(NeuralNetwork network, boolean approximate, Backend backend) {
+        COMPILATIONS.increment();
+        Scratch scratch = SCRATCH.get();
+        int n = network.nodeCount(), links = network.connectionCount();
+
+        int maxIndex = 0, layers = 0;
+        int[] layer = scratch.layer = fit(scratch.layer, n);
+        for (int i = 0; i < n; i++) {
+            layer[i] = network.nodeLayer(i);
+            layers = max(layers, layer[i] + 1);
+            maxIndex = max(maxIndex, network.nodeIndex(i));
+        }
+        int[] order = scratch.order = countingSort(layer, n, layers, null, scratch, scratch.order);
+        int[] position = scratch.position = fit(scratch.position, maxIndex + 1);
+        if (this.bias.length < n) {
+            this.bias = new double[n];
+            this.activation = new Activation[n];
+            this.values = new double[n];
+        }
+        this.kind = backend == Backend.SCALAR ? null : this.kind == null || this.kind.length < n ? new byte[n] : this.kind;
+        int numOutputs = 0;
+        for (int p = 0; p < n; p++) {
+            int node = order[p];
+            position[network.nodeIndex(node)] = p;
+            this.bias[p] = network.nodeBias(node);
+            this.activation[p] = Activation.of(network.nodeActivation(node), approximate);
+            if (this.kind != null) this.kind[p] = (byte) ((Activation.Exact) Activation.of(network.nodeActivation(node), false)).ordinal();
+            if (network.outputNode(network.nodeIndex(node))) numOutputs++;
+        }
+        if (this.outputs.length != numOutputs) this.outputs = new int[numOutputs];
+        for (int p = 0, k = 0; p < n; p++) if (network.outputNode(network.nodeIndex(order[p]))) this.outputs[k++] = p;
+
+        // keep only enabled links pointing forward in the evaluation order, as the push based
+        // evaluation silently dropped contributions to nodes that had already been engaged
+        int m = 0;
+        int[] from = scratch.from = fit(scratch.from, links);
+        int[] to = scratch.to = fit(scratch.to, links);
+        double[] w = scratch.weight = scratch.weight.length >= links ? scratch.weight : new double[max(links, 2 * scratch.weight.length)];
+        for (int c = 0; c < links; c++) {
+            if (!network.enabled(c)) continue;
+            int p = position[network.fromNode(c)], q = position[network.toNode(c)];
+            if (q <= p) continue;
+            from[m] = p;
+            to[m] = q;
+            w[m++] = network.weight(c);
+        }
+
+        // two stable counting sorts: by source, then by target, so every node sums its inputs
+        // in the same order the original engage() loop pushed them
+        int[] bySource = scratch.bySource = countingSort(from, m, n, null, scratch, scratch.bySource);
+        int[] byTarget = scratch.byTarget = countingSort(to, m, n, bySource, scratch, scratch.byTarget);
+        int[] start = this.start = fit(this.start, n + 1);
+        Arrays.fill(start, 0, n + 1, 0);
+        for (int e = 0; e < m; e++) start[to[e] + 1]++;
+        for (int p = 0; p < n; p++) start[p + 1] += start[p];
+        if (this.source.length < m) {
+            this.source = new int[m];
+            this.weight = new double[m];
+        }
+        for (int e = 0; e < m; e++) {
+            this.source[e] = from[byTarget[e]];
+            this.weight[e] = w[byTarget[e]];
+        }
+        this.numOutputs = numOutputs;
+        this.size = n;
+        this.links = m;
+        this.backend = backend;
+        this.foldedNodes = 0;
+        if (SIMPLIFY) this.simplify(scratch);
+        this.removedNodes = n - this.size;
+        this.removedLinks = links - this.links;
+        m = this.links;
+        n = this.size;
+        if (backend == Backend.VECTOR_FLOAT) {
+            if (this.weight32 == null || this.weight32.length < m) this.weight32 = new float[this.weight.length];
+            if (this.bias32 == null || this.bias32.length < n) this.bias32 = new float[this.bias.length];
+            for (int e = 0; e < m; e++) this.weight32[e] = (float) this.weight[e];
+            for (int p = 0; p < n; p++) this.bias32[p] = (float) this.bias[p];
+        }
+    }
+
+    /*
+     * Drops what cannot reach an output and folds what is known before the first sample, without
+     * reordering a single sum, so every output stays the same to the last bit:
+     * - a node whose inputs are all constant is computed here and kept as a bias behind an identity,
+     *   with the scalar kernels, so only for the scalar backend
+     * - an identity node passing on one input with weight 1 and no bias is replaced by that input in
+     *   its targets, the values can only differ in the sign of a zero, which no sum can tell apart
+     * - hidden nodes no output depends on go with their links
+     * Parallel links are left alone: w1 * x + w2 * x rounds differently than (w1 + w2) * x, and
+     * genomes never link the same pair twice anyway.
+     */
+    private void simplify(Scratch scratch) {
+        int n = this.size, numInputs = this.numInputs;
+        int[] start = this.start, source = this.source;
+        double[] weight = this.weight, bias = this.bias;
+        boolean fold = this.backend == Backend.SCALAR;
+        int[] forward = scratch.forward = fit(scratch.forward, n);
+        int[] live = scratch.live = fit(scratch.live, n);
+        boolean[] known = scratch.known = scratch.known.length >= n ? scratch.known : new boolean[max(n, 2 * scratch.known.length)];
+        double[] constant = scratch.constant = scratch.constant.length >= n ? scratch.constant : new double[max(n, 2 * scratch.constant.length)];
+        Arrays.fill(live, 0, n, 0);
+        for (int k = 0; k < this.numOutputs; k++) live[this.outputs[k]] = 1;
+        for (int p = 0; p < n; p++) {
+            forward[p] = p;
+            known[p] = false;
+            if (p < numInputs) continue;
+            boolean inputsKnown = fold;
+            for (int e = start[p]; e < start[p + 1] && inputsKnown; e++) inputsKnown = known[source[e]];
+            if (inputsKnown) {
+                double sum = 0;
+                for (int e = start[p]; e < start[p + 1]; e++) sum += weight[e] * constant[source[e]];
+                double value = this.activation[p].apply(sum + bias[p]);
+                // evaluated as 0 + bias, which only turns -0.0 into 0.0
+                known[p] = Double.doubleToRawLongBits(0 + value) == Double.doubleToRawLongBits(value);
+                constant[p] = value;
+            } else if (this.activation[p] == Activation.Exact.IDENTITY && live[p] == 0 && start[p + 1] - start[p] == 1
+                    && weight[start[p]] == 1 && bias[p] == 0) forward[p] = forward[source[start[p]]];
+        }
+        // links only point forward, so one pass from the last node marks everything the outputs read
+        for (int p = n - 1; p >= numInputs; p--) {
+            if (live[p] == 0 || known[p]) continue;
+            for (int e = start[p]; e < start[p + 1]; e++) live[source[e] = forward[source[e]]] = 1;
+        }
+        // compact in place: nodes and links only move to lower positions
+        int size = 0, m = 0, folded = 0;
+        for (int p = 0; p < n; p++) {
+            if (p >= numInputs && live[p] == 0) {
+                live[p] = -1;
+                continue;
+            }
+            int q = live[p] = size++, end = start[p + 1];
+            if (p < numInputs) continue;
+            int first = start[p];
+            start[q] = m;
+            if (known[p]) {
+                folded++;
+                this.bias[q] = constant[p];
+                this.activation[q] = Activation.Exact.IDENTITY;
+                continue;
+            }
+            for (int e = first; e < end; e++) {
+                source[m] = live[source[e]];
+                weight[m++] = weight[e];
+            }
+            this.bias[q] = bias[p];
+            this.activation[q] = this.activation[p];
+            if (this.kind != null) this.kind[q] = this.kind[p];
+        }
+        start[size] = m;
+        for (int k = 0; k < this.numOutputs; k++) this.outputs[k] = live[this.outputs[k]];
+        this.size = size;
+        this.links = m;
+        this.foldedNodes = folded;
+    }
+    private static int[] countingSort(int[] keys, int m, int n, int[] within, Scratch scratch, int[] sorted) {
+        int[] offsets = scratch.offsets = fit(scratch.offsets, n + 1);
+        Arrays.fill(offsets, 0, n + 1, 0);
+        for (int e = 0; e < m; e++) offsets[keys[e] + 1]++;
+        for (int p = 0; p < n; p++) offsets[p + 1] += offsets[p];
+        sorted = fit(sorted, m);
+        for (int i = 0; i < m; i++) {
+            int e = within == null ? i : within[i];
+            sorted[offsets[keys[e]]++] = e;
+        }
+        return sorted;
+    }
+    private static int[] fit(int[] array, int length) {
+        return array.length >= length ? array : new int[max(length, 2 * array.length)];
+    }
+
+    // work arrays of the compiler, one set per thread
+    private static final class Scratch {
+        private int[] layer = new int[0], order = new int[0], position = new int[0], from = new int[0], to = new int[0];
+        private int[] bySource = new int[0], byTarget = new int[0], offsets = new int[0];
+        private double[] weight = new double[0];
+        private int[] forward = new int[0], live = new int[0];
+        private boolean[] known = new boolean[0];
+        private double[] constant = new double[0];
+    }
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final LongAdder COMPILATIONS = new LongAdder();
+
+    /** Genomes compiled so far by the whole process, a genome is only recompiled after it changed. */
+    public static long compilations() {
+        return COMPILATIONS.sum();
+    }
+
+    public double[] feedforward(double[] input) {
+        double[] result = new double[this.numOutputs];
+        this.feedforward(input, result);
+        return result;
+    }
+    public void feedforward(double[] input, double[] output) {
+        final double[] values = this.values;
+        System.arraycopy(input, 0, values, 0, this.numInputs);
+        for (int q = this.numInputs; q < this.size; q++) {
+            double sum = 0;
+            for (int e = this.start[q], end = this.start[q + 1]; e < end; e++)
+                sum += this.weight[e] * values[this.source[e]];
+            values[q] = this.activation[q].apply(sum + this.bias[q]);
+        }
+        for (int k = 0; k < this.numOutputs; k++) output[k] = values[this.outputs[k]];
+    }
+
+    public void feedforward(double[][] inputs, int count, double[][] outputs) {
+        this.feedforward(inputs, 0, count, outputs);
+    }
+    /** Evaluates samples {@code from} to {@code from + count} of the columns, results go to the same positions. */
+    public void feedforward(double[][] inputs, int from, int count, double[][] outputs) {
+        if (this.backend != Backend.SCALAR) {
+            VectorKernels.feedforward(this, inputs, from, count, outputs);
+            return;
+        }
+        double[][] block = block(this.size);
+        for (int base = from, last = from + count; base < last; base += BLOCK) {
+            int len = min(BLOCK, last - base);
+            for (int q = this.numInputs; q < this.size; q++) {
+                double[] acc = block[q];
+                Arrays.fill(acc, 0, len, 0);
+                for (int e = this.start[q], end = this.start[q + 1]; e < end; e++) {
+                    int src = this.source[e];
+                    double w = this.weight[e];
+                    double[] col = src < this.numInputs ? inputs[src] : block[src];
+                    int off = src < this.numInputs ? base : 0;
+                    for (int s = 0; s < len; s++) acc[s] += w * col[off + s];
+                }
+                this.activation[q].apply(this.bias[q], acc, len);
+            }
+            for (int k = 0; k < this.numOutputs; k++) {
+                int p = this.outputs[k];
+                if (p < this.numInputs) System.arraycopy(inputs[p], base, outputs[k], base, len);
+                else System.arraycopy(block[p], 0, outputs[k], base, len);
+            }
+        }
+    }
+
+    /** This thread's block of at least {@code size} columns of {@link #BLOCK} samples. */
+    static double[][] block(int size) {
+        double[][] block = BLOCKS.get();
+        if (block.length < size) {
+            int length = block.length;
+            block = Arrays.copyOf(block, size);
+            for (int p = length; p < size; p++) block[p] = new double[BLOCK];
+            BLOCKS.set(block);
+        }
+        return block;
+    }
+
+    public Backend backend() {
+        return this.backend;
+    }
+    public int numInputs() {
+        return this.numInputs;
+    }
+    public int numOutputs() {
+        return this.numOutputs;
+    }
+    public int size() {
+        return this.size;
+    }
+    public int links() {
+        return this.links;
+    }
+    Activation activation(int position) {
+        return this.activation[position];
+    }
+    /** Nodes of the genome compiling left out, as no output depends on them or their value is passed on unchanged. */
+    public int removedNodes() {
+        return this.removedNodes;
+    }
+    /** Connections of the genome that are not evaluated: disabled, pointing backwards or made redundant by simplifying. */
+    public int removedLinks() {
+        return this.removedLinks;
+    }
+    /** Nodes that only depend on constants and were computed once while compiling. */
+    public int foldedNodes() {
+        return this.foldedNodes;
+    }
+}
@@ -1,72 +1,210 @@
 package NEAT;
 
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
-import static NEAT.Example.Settings.RANDOM;
-
-public class Population {
+public class Population implements AutoCloseable {
     public static final int NUM_INDIVIDUALS = 500;
+    private final long seed;
     private final Individual[] population;
+    // individuals retired last generation, the next one is bred into them
+    private final Individual[] spare;
+    private final InnovationRegistry innovations;
     private Individual bestPlayer;
     public double bestFitness;
-    private final List<Integer> matingPool;
+    private final double[] fitness;
+    private Selector selector;
+    private Speciation speciation;
+    private EvaluationEngine engine;
+    private FitnessCache fitnessCache;
+    private Racing racing;
+    // racing state of a loaded checkpoint, handed to the racing set next
+    private Racing.State racingState;
+    private Dataset dataset;
+    private final Metrics metrics;
     public int generation;
-    public Population(int numInputs, int numOutputs) {
-        this.generation = 0;
-        this.bestFitness = 0;
-        this.population = new Individual[NUM_INDIVIDUALS];
-        for (int i = 0; i< NUM_INDIVIDUALS; i++) {
+    public Population(int numInputs, int numOutputs, long seed) {
+        this(numInputs, numOutputs, seed, new InnovationRegistry());
+    }
+    /** Populations that exchange individuals must share their innovation registry. */
+    public Population(int numInputs, int numOutputs, long seed, InnovationRegistry innovations) {
+        this(numInputs, numOutputs, seed, NUM_INDIVIDUALS, innovations);
+    }
+    public Population(int numInputs, int numOutputs, long seed, int size, InnovationRegistry innovations) {
+        this(seed, new Individual[size], innovations);
+        SplittableRandom random = this.random(-1);
+        for (int i = 0; i< size; i++) {
             Individual individual = new Individual();
-            individual.setBrain(NeuralNetwork.createNetwork(numInputs,numOutputs));
+            individual.setBrain(NeuralNetwork.createNetwork(numInputs,numOutputs,this.innovations,random.split()));
             this.population[i] = individual;
         }
-        this.matingPool = new ArrayList<>();
     }
-    public void initPopulation() {
-        for (int i = 0; i< NUM_INDIVIDUALS; i++) {
-            this.population[i].init();
+    private Population(long seed, Individual[] population, InnovationRegistry innovations) {
+        this.seed = seed;
+        this.generation = 0;
+        this.bestFitness = 0;
+        this.population = population;
+        this.spare = new Individual[population.length];
+        this.innovations = innovations;
+        this.fitness = new double[population.length];
+        this.selector = Selector.elitist(Selector.alias(), 0.1);
+        this.engine = EvaluationEngine.fromProperty();
+        this.fitnessCache = new FitnessCache(1 << 12);
+        this.metrics = Metrics.ENABLED ? new Metrics() : null;
+    }
+    public void evaluate() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        int stale = Metrics.ENABLED ? this.metrics.begin(this.population) : 0;
+        for (Individual individual : this.population) individual.setDataset(this.dataset);
+        if (this.racing != null) this.racing.start(this.population);
+        if (this.fitnessCache == null) this.engine.evaluate(this.population);
+        else this.fitnessCache.evaluate(this.population, this.engine);
+        if (this.racing != null) this.racing.finish(this.population);
+        if (Metrics.ENABLED) {
+            this.metrics.compiled(stale, this.population);
+            this.metrics.add(Metrics.Phase.EVALUATE, System.nanoTime() - start);
         }
     }
     public void fillMatingPool() {
-        this.matingPool.clear();
+        int best = -1;
         for (int i = 0;i< this.population.length; i++) {
             if (this.population[i].fitness() > this.bestFitness){
                 this.bestFitness = this.population[i].fitness();
-                this.bestPlayer = this.population[i];
-            }
-            double n = this.population[i].fitness() * 100;
-            for (int k = 0; k< n; k++) {
-                this.matingPool.add(i);
+                best = i;
             }
+            this.fitness[i] = this.population[i].fitness();
+        }
+        // the population is recycled, so the champion is a copy the population owns
+        if (best >= 0) {
+            Individual champion = this.population[best];
+            if (this.bestPlayer == null) this.bestPlayer = new Individual(champion.id());
+            this.bestPlayer.copyFrom(champion);
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (this.speciation != null) this.speciation.speciate(this.population, this.fitness, this.generation);
+        long speciated = Metrics.ENABLED ? System.nanoTime() : 0;
+        this.selector.prepare(this.fitness, 2 * this.population.length);
+        if (Metrics.ENABLED) {
+            this.metrics.add(Metrics.Phase.SPECIATE, speciated - start);
+            this.metrics.add(Metrics.Phase.SELECT, System.nanoTime() - speciated);
         }
     }
 
+    /**
+     * Breeds the next generation into the individuals and genome arrays retired by the previous one, so
+     * once genomes stop growing a generation allocates next to nothing. Individuals of older generations
+     * must not be kept, copy them.
+     */
     public void naturalSelection() {
-        Individual[] children = new Individual[this.population.length];
+        Individual[] children = this.spare;
+        SplittableRandom random = this.random(this.generation);
         this.fillMatingPool();
+        if (Metrics.ENABLED) this.metrics.sizes(this.population);
         for (int i = 0; i< this.population.length; i++){
-            Individual p1 = this.selectPlayer();
-            Individual p2 = this.selectPlayer();
-            children[i] = (p1.fitness() > p2.fitness() ? p1.crossover(p2) : p2.crossover(p1));
+            if (Metrics.ENABLED) {
+                children[i] = this.breedMeasured(random, children[i]);
+                this.prefetch(children[i]);
+                continue;
+            }
+            Individual p1 = this.selectPlayer(random);
+            Individual p2 = this.selectPlayer(random);
+            SplittableRandom childRandom = random.split();
+            children[i] = (p1.fitness() > p2.fitness() ? p1.crossover(p2, childRandom, children[i]) : p2.crossover(p1, childRandom, children[i]));
+            this.prefetch(children[i]);
         }
 
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         for (int i = 0; i< this.population.length; i++){
+            Individual retired = this.population[i];
             this.population[i] = children[i];
-            this.population[i].getBrain().generateNetwork();
+            children[i] = retired;
+        }
+        if (Metrics.ENABLED) {
+            this.metrics.add(Metrics.Phase.REBUILD, System.nanoTime() - start);
+            this.metrics.publish(this.generation, this.bestFitness);
         }
 
         this.generation++;
     }
 
-    private Individual selectPlayer() {
-        if (RANDOM.nextDouble() < 0.1) {
-            return this.bestPlayer;
-        }
-        return this.population[this.matingPool.get(RANDOM.nextInt(this.matingPool.size()))];
+    private void prefetch(Individual child) {
+        if (this.fitnessCache == null || !this.fitnessCache.contains(child.getBrain())) this.engine.prefetch(child);
+    }
+
+    // same steps and random draws as Individual.crossover, with every phase timed apart
+    private Individual breedMeasured(SplittableRandom random, Individual target) {
+        long t0 = System.nanoTime();
+        Individual p1 = this.selectPlayer(random);
+        Individual p2 = this.selectPlayer(random);
+        SplittableRandom childRandom = random.split();
+        long t1 = System.nanoTime();
+        Individual child = p1.fitness() > p2.fitness() ? p1.offspring(p2, childRandom, target) : p2.offspring(p1, childRandom, target);
+        long t2 = System.nanoTime();
+        int reordered = child.getBrain().reordered();
+        this.metrics.mutated(child.getBrain().mutate(childRandom));
+        long t3 = System.nanoTime();
+        child.getBrain().generateNetwork();
+        long t4 = System.nanoTime();
+        this.metrics.reordered(child.getBrain().reordered() - reordered);
+        this.metrics.add(Metrics.Phase.SELECT, t1 - t0);
+        this.metrics.add(Metrics.Phase.CROSSOVER, t2 - t1);
+        this.metrics.add(Metrics.Phase.MUTATE, t3 - t2);
+        this.metrics.add(Metrics.Phase.REBUILD, t4 - t3);
+        return child;
+    }
+
+    /**
+     * Everything a run needs to carry on exactly where it stopped, between two generations. The random
+     * streams are derived from the seed and the generation, so those two numbers are its whole RNG state.
+     */
+    void write(GenomeCodec.Output out) {
+        out.int64(this.seed);
+        out.varint(this.generation);
+        out.bits(this.bestFitness);
+        out.zigzag(Individual.lastId());
+        this.innovations.write(out);
+        out.varint(this.population.length);
+        for (Individual individual : this.population) individual.write(out);
+        out.varint(this.bestPlayer == null ? 0 : 1);
+        if (this.bestPlayer != null) this.bestPlayer.write(out);
+        out.varint(this.speciation == null ? 0 : 1);
+        if (this.speciation != null) this.speciation.write(out);
+        out.varint(this.racing == null ? 0 : 1);
+        if (this.racing != null) this.racing.state().write(out);
+    }
+    static Population read(ByteBuffer in) {
+        long seed = in.getLong();
+        int generation = (int) GenomeCodec.varint(in);
+        double bestFitness = GenomeCodec.bits(in);
+        Individual.reserveIds((int) GenomeCodec.zigzag(in));
+        InnovationRegistry innovations = InnovationRegistry.read(in);
+        Individual[] individuals = new Individual[(int) GenomeCodec.varint(in)];
+        for (int i = 0; i < individuals.length; i++) individuals[i] = Individual.read(in, innovations);
+        Population population = new Population(seed, individuals, innovations);
+        population.generation = generation;
+        population.bestFitness = bestFitness;
+        if (GenomeCodec.varint(in) != 0) population.bestPlayer = Individual.read(in, innovations);
+        if (GenomeCodec.varint(in) != 0) population.speciation = Speciation.read(in, innovations);
+        if (GenomeCodec.varint(in) != 0) population.racingState = Racing.State.read(in);
+        return population;
+    }
+
+    private Individual selectPlayer(RandomGenerator random) {
+        int selected = this.selector.select(random);
+        return selected == Selector.ELITE ? this.bestPlayer() : this.population[selected];
+    }
+
+    /**
+     * Every generation draws from its own stream derived from the master seed, and every child
+     * from a split of it taken in breeding order, so a run is fully determined by the seed no
+     * matter how many threads evaluate it.
+     */
+    private SplittableRandom random(long generation) {
+        return new SplittableRandom(new SplittableRandom(this.seed + generation).nextLong());
     }
 
     public Individual bestPlayer() {
@@ -75,7 +213,215 @@ public class Population {
                 orElse(this.population[0]) : bestPlayer;
     }
 
+    /** Snapshot of the last generation bred, {@code null} unless run with {@code -Dneat.metrics=true}. */
+    public Metrics.Generation metrics() {
+        return this.metrics == null ? null : this.metrics.last();
+    }
+    /** Unregisters the metrics MXBean, the population can still be bred afterwards but is no longer visible over JMX. */
+    @Override public void close() {
+        if (this.metrics != null) this.metrics.close();
+    }
+    public long seed() {
+        return this.seed;
+    }
+    public InnovationRegistry innovations() {
+        return this.innovations;
+    }
     public Individual[] players() {
         return this.population;
     }
+    public Selector selector() {
+        return this.selector;
+    }
+    public void setSelector(Selector selector) {
+        this.selector = selector;
+    }
+    public Speciation speciation() {
+        return this.speciation;
+    }
+    public void setSpeciation(Speciation speciation) {
+        this.speciation = speciation;
+    }
+    public EvaluationEngine evaluationEngine() {
+        return this.engine;
+    }
+    public void setEvaluationEngine(EvaluationEngine engine) {
+        this.engine = engine;
+    }
+    public FitnessCache fitnessCache() {
+        return this.fitnessCache;
+    }
+    /** {@code null} evaluates every individual every generation. */
+    public void setFitnessCache(FitnessCache fitnessCache) {
+        this.fitnessCache = fitnessCache;
+    }
+    public Dataset dataset() {
+        return this.dataset;
+    }
+    /**
+     * {@code null}, the default, evaluates on the classification points. The fitness cache is cleared,
+     * its entries were scored on the previous data set.
+     */
+    public void setDataset(Dataset dataset) {
+        this.dataset = dataset;
+        if (this.fitnessCache != null) this.fitnessCache.clear();
+    }
+    public Racing racing() {
+        return this.racing;
+    }
+    /**
+     * {@code null}, the default, scores every individual on every sample. The first racing set on a population
+     * loaded from a checkpoint carries on with the threshold and counters of the one it was saved with.
+     */
+    public void setRacing(Racing racing) {
+        this.racing = racing;
+        if (racing != null && this.racingState != null) racing.restore(this.racingState);
+        this.racingState = null;
+    }
+
+    /**
+     * Picks parents by index from the fitness values of a generation. Implementations keep their
+     * tables in primitive arrays that are reused from one generation to the next, and fall back
+     * to uniform selection when every fitness is zero.
+     */
+    public interface Selector {
+        /** Returned by {@link #elitist} selectors in place of an index, stands for the best player so far. */
+        int ELITE = -1;
+
+        void prepare(double[] fitness, int draws);
+        int select(RandomGenerator random);
+
+        /** Fitness proportional roulette using Vose's alias method, O(1) per draw. */
+        static Selector alias() {
+            return new Alias();
+        }
+        /** Stochastic universal sampling: one spin with {@code draws} evenly spaced pointers. */
+        static Selector stochasticUniversal() {
+            return new StochasticUniversal();
+        }
+        static Selector tournament(int size) {
+            return new Tournament(size);
+        }
+        /** Returns {@link #ELITE} with probability {@code rate}, otherwise delegates. */
+        static Selector elitist(Selector selector, double rate) {
+            return new Elitist(selector, rate);
+        }
+
+        final class Alias implements Selector {
+            private double[] probability = new double[0];
+            private double[] scaled = new double[0];
+            private int[] alias = new int[0];
+            private int[] small = new int[0];
+            private int[] large = new int[0];
+            private int n;
+
+            @Override public void prepare(double[] fitness, int draws) {
+                this.n = fitness.length;
+                if (this.probability.length < this.n) {
+                    this.probability = new double[this.n];
+                    this.scaled = new double[this.n];
+                    this.alias = new int[this.n];
+                    this.small = new int[this.n];
+                    this.large = new int[this.n];
+                }
+                double total = 0;
+                for (double f : fitness) total += f;
+                int s = 0, l = 0;
+                for (int i = 0; i < this.n; i++) {
+                    this.scaled[i] = total > 0 ? fitness[i] * this.n / total : 1;
+                    if (this.scaled[i] < 1) this.small[s++] = i;
+                    else this.large[l++] = i;
+                }
+                while (s > 0 && l > 0) {
+                    int less = this.small[--s], more = this.large[--l];
+                    this.probability[less] = this.scaled[less];
+                    this.alias[less] = more;
+                    this.scaled[more] = (this.scaled[more] + this.scaled[less]) - 1;
+                    if (this.scaled[more] < 1) this.small[s++] = more;
+                    else this.large[l++] = more;
+                }
+                while (l > 0) this.probability[this.large[--l]] = 1;
+                while (s > 0) this.probability[this.small[--s]] = 1;
+            }
+            @Override public int select(RandomGenerator random) {
+                int i = random.nextInt(this.n);
+                return random.nextDouble() < this.probability[i] ? i : this.alias[i];
+            }
+        }
+
+        final class StochasticUniversal implements Selector {
+            private double[] fitness = new double[0];
+            private int[] picks = new int[0];
+            private int draws;
+            private int next;
+
+            @Override public void prepare(double[] fitness, int draws) {
+                this.fitness = fitness;
+                this.draws = draws;
+                if (this.picks.length < draws) this.picks = new int[draws];
+                this.next = draws;
+            }
+            @Override public int select(RandomGenerator random) {
+                if (this.next == this.draws) this.spin(random);
+                return this.picks[this.next++];
+            }
+            private void spin(RandomGenerator random) {
+                int n = this.fitness.length;
+                double total = 0;
+                for (double f : this.fitness) total += f;
+                if (total <= 0) {
+                    for (int k = 0; k < this.draws; k++) this.picks[k] = random.nextInt(n);
+                } else {
+                    double step = total / this.draws, pointer = random.nextDouble() * step, cumulative = 0;
+                    for (int i = 0, k = 0; k < this.draws; k++, pointer += step) {
+                        while (i < n - 1 && cumulative + this.fitness[i] <= pointer) cumulative += this.fitness[i++];
+                        this.picks[k] = i;
+                    }
+                }
+                // the sweep yields picks in population order, shuffle so consecutive draws pair at random
+                for (int k = this.draws - 1; k > 0; k--) {
+                    int j = random.nextInt(k + 1), tmp = this.picks[k];
+                    this.picks[k] = this.picks[j];
+                    this.picks[j] = tmp;
+                }
+                this.next = 0;
+            }
+        }
+
+        final class Tournament implements Selector {
+            private final int size;
+            private double[] fitness;
+            private Tournament(int size) {
+                this.size = size;
+            }
+
+            @Override public void prepare(double[] fitness, int draws) {
+                this.fitness = fitness;
+            }
+            @Override public int select(RandomGenerator random) {
+                int best = random.nextInt(this.fitness.length);
+                for (int k = 1; k < this.size; k++) {
+                    int challenger = random.nextInt(this.fitness.length);
+                    if (this.fitness[challenger] > this.fitness[best]) best = challenger;
+                }
+                return best;
+            }
+        }
+
+        final class Elitist implements Selector {
+            private final Selector selector;
+            private final double rate;
+            private Elitist(Selector selector, double rate) {
+                this.selector = selector;
+                this.rate = rate;
+            }
+
+            @Override public void prepare(double[] fitness, int draws) {
+                this.selector.prepare(fitness, draws);
+            }
+            @Override public int select(RandomGenerator random) {
+                return random.nextDouble() < this.rate ? ELITE : this.selector.select(random);
+            }
+        }
+    }
 }
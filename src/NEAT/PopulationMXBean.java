@@ -0,0 +1,21 @@
+package NEAT;
+
+/**
+ * Last generation recorded by {@link Metrics}. Arrays are indexed by {@link Metrics.Phase} and
+ * {@link NeuralNetwork.Mutation} ordinal.
+ */
+public interface PopulationMXBean {
+    int getGeneration();
+    double getBestFitness();
+    long[] getPhaseNanos();
+    long[] getMutationCounts();
+    double getMeanNodes();
+    double getMeanConnections();
+    int getMaxLayers();
+    /** Children of this population {@link NeuralNetwork#generateNetwork()} had to put back in layer order. */
+    long getReorders();
+    /** Genomes compiled to evaluate this population, genomes are only recompiled after they changed. */
+    long getCompilations();
+    /** Allocated by the thread breeding and evaluating this population, not by pool threads or remote workers. */
+    long getAllocatedBytes();
+}
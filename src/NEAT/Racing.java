@@ -0,0 +1,141 @@
+package NEAT;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Racing evaluation: samples are scored in mini batches, in an order shuffled once, and an individual
+ * stops as soon as even an optimistic bound on its accuracy cannot reach the threshold, the fitness
+ * quantile {@code quantile} of the previous generation. The bound is the smaller of the Hoeffding bound
+ * {@code p + sqrt(ln(1 / delta) / 2n)} and the accuracy it would reach getting every remaining sample right.
+ * <p>
+ * Stopped individuals keep their running accuracy as fitness, which lies below the threshold, so they can
+ * never become the best player. Every individual that might reach the threshold is scored on all samples
+ * and gets the exact fitness a plain evaluation would give.
+ */
+public final class Racing {
+    private final double[][] inputs;
+    private final int[] labels;
+    private final int batch;
+    private final double delta;
+    private final double quantile;
+    private final double confidence;
+    private double threshold;
+    private double[] sorted = new double[0];
+    private long samples, stopped, lastSamples;
+    private int lastStopped;
+
+    /** Racing over {@code data}. Samples are visited in a shuffled order, so unlike plain evaluation they are held on the heap. */
+    public static Racing of(Dataset data, int batch, double delta, double quantile, long seed) {
+        ColumnarDataset copy = ColumnarDataset.copyOf(data);
+        return new Racing(copy.columns(), copy.labels(), batch, delta, quantile, seed);
+    }
+    /**
+     * @param inputs columns of the data set, {@code inputs[feature][sample]}
+     * @param labels class of every sample, compared with {@code output >= 0 ? 1 : 0}
+     */
+    public Racing(double[][] inputs, int[] labels, int batch, double delta, double quantile, long seed) {
+        int n = labels.length;
+        this.batch = batch;
+        this.delta = delta;
+        this.quantile = quantile;
+        this.confidence = Math.log(1 / delta) / 2;
+        int[] order = new int[n];
+        Arrays.setAll(order, i -> i);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1), tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        this.inputs = new double[inputs.length][n];
+        this.labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int f = 0; f < inputs.length; f++) this.inputs[f][i] = inputs[f][order[i]];
+            this.labels[i] = labels[order[i]];
+        }
+    }
+
+    void start(Individual[] individuals) {
+        for (Individual individual : individuals) individual.setRacing(this);
+    }
+    /** Collects the sample counts and sets the threshold of the next generation. */
+    void finish(Individual[] individuals) {
+        if (this.sorted.length != individuals.length) this.sorted = new double[individuals.length];
+        long samples = 0;
+        int stopped = 0;
+        for (int i = 0; i < individuals.length; i++) {
+            this.sorted[i] = individuals[i].fitness();
+            samples += individuals[i].samples();
+            if (!individuals[i].exact()) stopped++;
+        }
+        Arrays.sort(this.sorted);
+        this.threshold = this.sorted[(int) Math.min(this.sorted.length - 1, Math.floor(this.quantile * this.sorted.length))];
+        this.lastSamples = samples;
+        this.lastStopped = stopped;
+        this.samples += samples;
+        this.stopped += stopped;
+    }
+
+    /** The threshold and the counters, checkpoints keep them so a resumed run races like the interrupted one. */
+    record State(double threshold, long samples, long stopped, long lastSamples, int lastStopped) {
+        void write(GenomeCodec.Output out) {
+            out.bits(this.threshold);
+            out.varint(this.samples);
+            out.varint(this.stopped);
+            out.varint(this.lastSamples);
+            out.varint(this.lastStopped);
+        }
+        static State read(ByteBuffer in) {
+            return new State(GenomeCodec.bits(in), GenomeCodec.varint(in), GenomeCodec.varint(in), GenomeCodec.varint(in), (int) GenomeCodec.varint(in));
+        }
+    }
+    State state() {
+        return new State(this.threshold, this.samples, this.stopped, this.lastSamples, this.lastStopped);
+    }
+    void restore(State state) {
+        this.threshold = state.threshold();
+        this.samples = state.samples();
+        this.stopped = state.stopped();
+        this.lastSamples = state.lastSamples();
+        this.lastStopped = state.lastStopped();
+    }
+
+    boolean hopeless(int correct, int seen) {
+        double hoeffding = correct / (double) seen + Math.sqrt(this.confidence / seen);
+        double perfect = (correct + this.labels.length - seen) / (double) this.labels.length;
+        return Math.min(hoeffding, perfect) < this.threshold;
+    }
+
+    double[][] inputs() {
+        return this.inputs;
+    }
+    int label(int sample) {
+        return this.labels[sample];
+    }
+    int batch() {
+        return this.batch;
+    }
+    public int size() {
+        return this.labels.length;
+    }
+    public double delta() {
+        return this.delta;
+    }
+    public double threshold() {
+        return this.threshold;
+    }
+    public long lastSamples() {
+        return this.lastSamples;
+    }
+    public int lastStopped() {
+        return this.lastStopped;
+    }
+    public long samples() {
+        return this.samples;
+    }
+    public long stopped() {
+        return this.stopped;
+    }
+}
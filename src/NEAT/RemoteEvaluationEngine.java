@@ -0,0 +1,291 @@
+package NEAT;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates individuals on worker processes. Workers connect to the coordinator, which sends genomes
+ * encoded with {@link GenomeCodec} in batches and gets fitness values back; a worker runs
+ * {@link Individual#evaluateAll()} on its own copy of the data set.
+ * <ul>
+ *     <li>Batches are pulled from one queue, so fast workers simply take more of them.</li>
+ *     <li>Every worker has up to {@value #DEPTH} batches in flight, it never idles waiting for the next one.</li>
+ *     <li>Children are queued while the generation is still being bred, see {@link #prefetch}.</li>
+ *     <li>A worker that runs out of queued work runs a copy of the oldest batch another worker is still on,
+ *     the first result wins, so a slow worker cannot hold a generation back.</li>
+ *     <li>When a worker dies its unfinished batches go back to the queue. With no worker left the
+ *     coordinator evaluates the queue itself.</li>
+ * </ul>
+ * Racing is not applied remotely, workers always compute the exact fitness.
+ * <pre>
+ * worker      -> coordinator: MAGIC VERSION
+ * coordinator -> worker:      batch count (length genome)*
+ * worker      -> coordinator: batch count fitness*
+ * </pre>
+ */
+public final class RemoteEvaluationEngine implements EvaluationEngine, AutoCloseable {
+    private static final int MAGIC = 0x4E454157;
+    private static final int VERSION = 1;
+    private static final int DEPTH = 2;
+
+    private final ServerSocket server;
+    private final int batchSize;
+    private final BlockingDeque<Batch> queue = new LinkedBlockingDeque<>();
+    private final Set<Batch> running = ConcurrentHashMap.newKeySet();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Map<Individual, Batch> assigned = new IdentityHashMap<>();
+    private final List<Individual> filling = new ArrayList<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final AtomicInteger workers = new AtomicInteger();
+    private final AtomicLong batches = new AtomicLong(), redispatched = new AtomicLong(), stolen = new AtomicLong(), local = new AtomicLong();
+    private volatile boolean closed;
+
+    /** Listens on {@code port}, 0 picks a free one. */
+    public RemoteEvaluationEngine(int port, int batchSize) throws IOException {
+        this.server = new ServerSocket();
+        this.server.bind(new InetSocketAddress(port));
+        this.batchSize = batchSize;
+        Thread acceptor = new Thread(this::accept, "neat-coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override public void prefetch(Individual individual) {
+        if (this.assigned.containsKey(individual)) return;
+        this.filling.add(individual);
+        if (this.filling.size() >= this.batchSize) this.flush();
+    }
+    @Override public void evaluate(Individual[] individuals) {
+        this.evaluate(individuals, individuals.length);
+    }
+    @Override public void evaluate(Individual[] individuals, int count) {
+        for (int i = 0; i < count; i++) if (!this.assigned.containsKey(individuals[i])) this.prefetch(individuals[i]);
+        this.flush();
+        // prefetched children a fitness cache answered are waited for too: populations recycle
+        // their individuals, a batch still out could otherwise land on the next generation
+        Set<Batch> waiting = Collections.newSetFromMap(new IdentityHashMap<>());
+        waiting.addAll(this.assigned.values());
+        try {
+            for (Batch batch : waiting) {
+                while (!batch.done.isDone()) {
+                    if (this.workers.get() == 0 && this.evaluateQueued()) continue;
+                    try {
+                        batch.done.get(50, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException ignored) {
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("evaluation interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        this.assigned.clear();
+    }
+    private void flush() {
+        if (this.filling.isEmpty()) return;
+        Batch batch = new Batch(this.ids.getAndIncrement(), this.filling.toArray(new Individual[0]));
+        this.filling.clear();
+        for (Individual individual : batch.members) this.assigned.put(individual, batch);
+        this.batches.incrementAndGet();
+        this.queue.offer(batch);
+    }
+    private boolean evaluateQueued() {
+        Batch batch = this.queue.poll();
+        if (batch == null) return false;
+        for (Individual individual : batch.members) individual.evaluateAll();
+        this.local.incrementAndGet();
+        batch.complete(null);
+        // a batch given back by a dead worker is still listed as running, no worker will answer it now
+        this.running.remove(batch);
+        return true;
+    }
+
+    private void accept() {
+        while (!this.closed) {
+            Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (IOException e) {
+                if (!this.closed) System.err.println("coordinator stopped accepting workers: " + e);
+                return;
+            }
+            Thread thread = new Thread(() -> this.serveWorker(socket), "neat-worker-" + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    private void serveWorker(Socket socket) {
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        this.connections.add(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("not a compatible worker");
+            this.workers.incrementAndGet();
+            try {
+                while (!this.closed) {
+                    for (Batch batch; inFlight.size() < DEPTH && (batch = this.next(inFlight.isEmpty(), inFlight)) != null; ) {
+                        out.writeInt(batch.id);
+                        out.writeInt(batch.payload.length);
+                        for (byte[] genome : batch.payload) {
+                            out.writeInt(genome.length);
+                            out.write(genome);
+                        }
+                        out.flush();
+                        inFlight.add(batch);
+                    }
+                    if (inFlight.isEmpty()) continue;
+                    int id = in.readInt(), count = in.readInt();
+                    Batch batch = inFlight.poll();
+                    if (batch.id != id || count != batch.members.length) throw new IOException("worker answered batch " + id + " for " + batch.id);
+                    double[] fitness = new double[count];
+                    for (int i = 0; i < count; i++) fitness[i] = in.readDouble();
+                    batch.complete(fitness);
+                    this.running.remove(batch);
+                }
+            } finally {
+                this.workers.decrementAndGet();
+            }
+        } catch (IOException e) {
+            if (!this.closed) System.err.println("worker " + socket.getRemoteSocketAddress() + " lost: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.connections.remove(socket);
+            for (Batch batch : inFlight) {
+                if (batch.done.isDone()) continue;
+                this.redispatched.incrementAndGet();
+                this.queue.offerFirst(batch);
+            }
+        }
+    }
+    private Batch next(boolean idle, Deque<Batch> mine) throws InterruptedException {
+        Batch batch = idle ? this.queue.poll(50, TimeUnit.MILLISECONDS) : this.queue.poll();
+        while (batch != null && batch.done.isDone()) batch = this.queue.poll();
+        if (batch != null) {
+            this.running.add(batch);
+            return batch;
+        }
+        if (!idle) return null;
+        // nothing queued: back up the oldest batch still running elsewhere
+        Batch oldest = null;
+        for (Batch b : this.running)
+            if (!b.done.isDone() && !mine.contains(b) && (oldest == null || b.id < oldest.id)) oldest = b;
+        if (oldest != null && oldest.stolen.compareAndSet(false, true)) {
+            this.stolen.incrementAndGet();
+            return oldest;
+        }
+        return null;
+    }
+
+    /** Blocks until {@code count} workers are connected. */
+    public void awaitWorkers(int count, long timeoutMillis) throws InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.workers.get() < count) {
+            if (System.currentTimeMillis() > deadline) throw new TimeoutException(this.workers.get() + " of " + count + " workers connected");
+            Thread.sleep(20);
+        }
+    }
+    public int port() {
+        return this.server.getLocalPort();
+    }
+    public int workers() {
+        return this.workers.get();
+    }
+    public long batches() {
+        return this.batches.get();
+    }
+    /** Batches sent again because their worker died. */
+    public long redispatched() {
+        return this.redispatched.get();
+    }
+    /** Batches duplicated onto an idle worker because the original one was slow. */
+    public long stolen() {
+        return this.stolen.get();
+    }
+    /** Batches the coordinator evaluated itself while no worker was connected. */
+    public long local() {
+        return this.local.get();
+    }
+
+    @Override public void close() throws IOException {
+        this.closed = true;
+        this.server.close();
+        for (Socket socket : this.connections) socket.close();
+    }
+
+    /**
+     * Worker side: connects to a coordinator and evaluates what it sends until the connection closes.
+     * The data set {@link Individual#evaluateAll()} reads must be set up before.
+     */
+    public static void serve(String host, int port) throws IOException {
+        serve(host, port, null);
+    }
+    /** Evaluates on {@code data}, which must hold the same samples as the coordinator's. */
+    public static void serve(String host, int port, Dataset data) throws IOException {
+        EvaluationEngine engine = EvaluationEngine.fromProperty();
+        InnovationRegistry innovations = new InnovationRegistry();
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+            while (true) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException | SocketException e) {
+                    return;
+                }
+                Individual[] individuals = new Individual[in.readInt()];
+                for (int i = 0; i < individuals.length; i++) {
+                    byte[] genome = new byte[in.readInt()];
+                    in.readFully(genome);
+                    individuals[i] = new Individual(i);
+                    individuals[i].setBrain(GenomeCodec.decode(ByteBuffer.wrap(genome), innovations));
+                    individuals[i].setDataset(data);
+                }
+                engine.evaluate(individuals);
+                out.writeInt(id);
+                out.writeInt(individuals.length);
+                for (Individual individual : individuals) out.writeDouble(individual.fitness());
+                out.flush();
+            }
+        }
+    }
+
+    private static final class Batch {
+        private final int id;
+        private final Individual[] members;
+        private final byte[][] payload;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicBoolean stolen = new AtomicBoolean();
+        private Batch(int id, Individual[] members) {
+            this.id = id;
+            this.members = members;
+            this.payload = new byte[members.length][];
+            for (int i = 0; i < members.length; i++) this.payload[i] = GenomeCodec.encode(members[i].getBrain());
+        }
+
+        // the first result wins, a duplicate finishing later is ignored
+        private synchronized void complete(double[] fitness) {
+            if (this.done.isDone()) return;
+            if (fitness != null) for (int i = 0; i < fitness.length; i++) this.members[i].setFitness(fitness[i]);
+            this.done.complete(null);
+        }
+    }
+}
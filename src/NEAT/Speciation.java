@@ -0,0 +1,213 @@
+package NEAT;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+
+/**
+ * NEAT speciation: individuals are grouped by compatibility distance to the representative of each
+ * species, fitness is shared within a species, and species that stop improving are culled.
+ * Distances are not cached: every genome of a generation is bred anew, so each pair of genome and
+ * representative is compared at most once anyway.
+ */
+public class Speciation {
+    private final double excessCoefficient;
+    private final double disjointCoefficient;
+    private final double weightCoefficient;
+    private final int stagnationLimit;
+    private final int targetSpecies;
+    private double threshold;
+    private final List<Species> species;
+    private int[] assignment;
+    private int nextSpecies;
+    private long lastNanos;
+
+    public Speciation() {
+        this(1, 1, 0.4, 3, 15, 15);
+    }
+    /**
+     * @param targetSpecies when positive, the threshold is nudged every generation to keep the
+     *                      number of species close to this value
+     */
+    public Speciation(double excessCoefficient, double disjointCoefficient, double weightCoefficient, double threshold, int stagnationLimit, int targetSpecies) {
+        this.excessCoefficient = excessCoefficient;
+        this.disjointCoefficient = disjointCoefficient;
+        this.weightCoefficient = weightCoefficient;
+        this.threshold = threshold;
+        this.stagnationLimit = stagnationLimit;
+        this.targetSpecies = targetSpecies;
+        this.species = new ArrayList<>();
+        this.assignment = new int[0];
+    }
+
+    /**
+     * Assigns every individual to a species and replaces {@code fitness} with the shared fitness
+     * selection should use.
+     */
+    public void speciate(Individual[] individuals, double[] fitness, int generation) {
+        long start = System.nanoTime();
+        int n = individuals.length;
+        if (this.assignment.length < n) this.assignment = new int[n];
+
+        // distances against last generation's representatives are independent, compute them in parallel
+        int existing = this.species.size();
+        final int[] assignment = this.assignment;
+        IntStream.range(0, n).parallel().forEach(i -> assignment[i] = this.compatible(individuals[i].getBrain(), 0, existing));
+
+        this.species.forEach(Species::clear);
+        for (int i = 0; i < n; i++) {
+            int s = assignment[i];
+            if (s < 0) s = this.compatible(individuals[i].getBrain(), existing, this.species.size());
+            if (s < 0) {
+                Species created = new Species(this.nextSpecies++, individuals[i].getBrain(), generation);
+                this.species.add(created);
+                s = this.species.size() - 1;
+            }
+            this.species.get(s).add(i);
+        }
+        this.species.removeIf(s -> s.size == 0);
+
+        int champion = 0;
+        for (int i = 1; i < n; i++) if (fitness[i] > fitness[champion]) champion = i;
+        for (Species s : this.species) {
+            int best = s.members[0];
+            for (int k = 1; k < s.size; k++) if (fitness[s.members[k]] > fitness[best]) best = s.members[k];
+            if (fitness[best] > s.bestFitness) {
+                s.bestFitness = fitness[best];
+                s.lastImproved = generation;
+            }
+            s.representative = individuals[best].getBrain();
+            boolean stagnant = generation - s.lastImproved >= this.stagnationLimit && best != champion;
+            for (int k = 0; k < s.size; k++) {
+                int i = s.members[k];
+                fitness[i] = stagnant ? 0 : fitness[i] / s.size;
+            }
+        }
+
+        if (this.targetSpecies > 0 && this.species.size() != this.targetSpecies)
+            this.threshold = max(0.1, this.threshold * (this.species.size() > this.targetSpecies ? 1.1 : 0.9));
+
+        this.lastNanos = System.nanoTime() - start;
+    }
+
+    private int compatible(NeuralNetwork genome, int from, int to) {
+        for (int s = from; s < to; s++) if (this.distance(genome, this.species.get(s).representative) < this.threshold) return s;
+        return -1;
+    }
+
+    /** Compatibility distance, computed with a single merge over both innovation sorted genomes. */
+    public double distance(NeuralNetwork a, NeuralNetwork b) {
+        int x = a.connectionCount(), y = b.connectionCount();
+        int i = 0, j = 0, matching = 0, disjoint = 0;
+        double weightDifference = 0;
+        while (i < x && j < y) {
+            int p = a.innovation(i), q = b.innovation(j);
+            if (p == q) {
+                weightDifference += abs(a.weight(i++) - b.weight(j++));
+                matching++;
+            } else {
+                disjoint++;
+                if (p < q) i++;
+                else j++;
+            }
+        }
+        int excess = (x - i) + (y - j);
+        int genes = max(x, y);
+        double normalization = genes < 20 ? 1 : genes;
+        return this.excessCoefficient * excess / normalization +
+                this.disjointCoefficient * disjoint / normalization +
+                this.weightCoefficient * (matching == 0 ? 0 : weightDifference / matching);
+    }
+
+    public double threshold() {
+        return this.threshold;
+    }
+    public List<Species> species() {
+        return this.species;
+    }
+    /** Wall clock time spent in the last call to {@link #speciate}. */
+    public long lastNanos() {
+        return this.lastNanos;
+    }
+
+    void write(GenomeCodec.Output out) {
+        out.bits(this.excessCoefficient);
+        out.bits(this.disjointCoefficient);
+        out.bits(this.weightCoefficient);
+        out.bits(this.threshold);
+        out.varint(this.stagnationLimit);
+        out.varint(this.targetSpecies);
+        out.varint(this.nextSpecies);
+        out.varint(this.species.size());
+        for (Species s : this.species) {
+            out.varint(s.id);
+            out.zigzag(s.created);
+            out.zigzag(s.lastImproved);
+            out.bits(s.bestFitness);
+            s.representative.write(out);
+        }
+    }
+    static Speciation read(ByteBuffer in, InnovationRegistry innovations) {
+        Speciation speciation = new Speciation(GenomeCodec.bits(in), GenomeCodec.bits(in), GenomeCodec.bits(in), GenomeCodec.bits(in),
+                (int) GenomeCodec.varint(in), (int) GenomeCodec.varint(in));
+        speciation.nextSpecies = (int) GenomeCodec.varint(in);
+        for (int i = 0, count = (int) GenomeCodec.varint(in); i < count; i++) {
+            int id = (int) GenomeCodec.varint(in), created = (int) GenomeCodec.zigzag(in), lastImproved = (int) GenomeCodec.zigzag(in);
+            double bestFitness = GenomeCodec.bits(in);
+            Species s = new Species(id, NeuralNetwork.read(in, innovations), created);
+            s.lastImproved = lastImproved;
+            s.bestFitness = bestFitness;
+            speciation.species.add(s);
+        }
+        return speciation;
+    }
+
+    public static final class Species {
+        private final int id;
+        private final int created;
+        private NeuralNetwork representative;
+        private int[] members;
+        private int size;
+        private double bestFitness;
+        private int lastImproved;
+        private Species(int id, NeuralNetwork representative, int generation) {
+            this.id = id;
+            this.created = generation;
+            this.representative = representative;
+            this.members = new int[8];
+            this.lastImproved = generation;
+        }
+
+        private void add(int individual) {
+            if (this.size == this.members.length) this.members = Arrays.copyOf(this.members, this.size * 2);
+            this.members[this.size++] = individual;
+        }
+        private void clear() {
+            this.size = 0;
+        }
+
+        public int id() {
+            return this.id;
+        }
+        public int size() {
+            return this.size;
+        }
+        public int age(int generation) {
+            return generation - this.created;
+        }
+        public int staleness(int generation) {
+            return generation - this.lastImproved;
+        }
+        public double bestFitness() {
+            return this.bestFitness;
+        }
+        public NeuralNetwork representative() {
+            return this.representative;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package NEAT;
+
+import jdk.incubator.vector.*;
+
+import static java.lang.Math.min;
+
+/**
+ * Batch evaluation of a {@link Phenotype} with the vector API, see {@link Phenotype.Backend}. A node is
+ * computed one vector of samples at a time: the sum over its connections stays in a register and the
+ * activation is applied before it is stored. Only loaded when the {@code jdk.incubator.vector} module is.
+ */
+final class VectorKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final ThreadLocal<float[][]> BLOCKS = ThreadLocal.withInitial(() -> new float[0][]);
+
+    private VectorKernels() {
+    }
+
+    static void feedforward(Phenotype phenotype, double[][] inputs, int from, int count, double[][] outputs) {
+        if (phenotype.backend == Phenotype.Backend.VECTOR_FLOAT) floats(phenotype, inputs, from, count, outputs);
+        else doubles(phenotype, inputs, from, count, outputs);
+    }
+
+    private static void doubles(Phenotype phenotype, double[][] inputs, int from, int count, double[][] outputs) {
+        int numInputs = phenotype.numInputs, lanes = DOUBLES.length();
+        int[] start = phenotype.start, source = phenotype.source;
+        double[] weight = phenotype.weight;
+        double[][] block = Phenotype.block(phenotype.size);
+        for (int base = from, last = from + count; base < last; base += Phenotype.BLOCK) {
+            int len = min(Phenotype.BLOCK, last - base);
+            for (int q = numInputs; q < phenotype.size; q++) {
+                int kind = phenotype.kind[q];
+                double bias = phenotype.bias[q];
+                for (int s = 0; s < len; s += lanes) {
+                    // columns of the data set end with the last sample, block rows always hold a full vector
+                    VectorMask<Double> inRange = s + lanes <= len ? null : DOUBLES.indexInRange(s, len);
+                    DoubleVector sum = DoubleVector.zero(DOUBLES);
+                    for (int e = start[q], end = start[q + 1]; e < end; e++) {
+                        int src = source[e];
+                        DoubleVector x = src >= numInputs ? DoubleVector.fromArray(DOUBLES, block[src], s) :
+                                inRange == null ? DoubleVector.fromArray(DOUBLES, inputs[src], base + s) :
+                                DoubleVector.fromArray(DOUBLES, inputs[src], base + s, inRange);
+                        sum = sum.add(x.mul(weight[e]));
+                    }
+                    activate(kind, sum.add(bias)).intoArray(block[q], s);
+                }
+            }
+            for (int k = 0; k < phenotype.numOutputs; k++) {
+                int p = phenotype.outputs[k];
+                if (p < numInputs) System.arraycopy(inputs[p], base, outputs[k], base, len);
+                else System.arraycopy(block[p], 0, outputs[k], base, len);
+            }
+        }
+    }
+    private static DoubleVector activate(int kind, DoubleVector x) {
+        return switch (kind) {
+            case 0 -> DoubleVector.broadcast(DOUBLES, 1).div(x.mul(-4.9).lanewise(VectorOperators.EXP).add(1));
+            case 1 -> x;
+            case 2 -> DoubleVector.zero(DOUBLES).blend(1, x.compare(VectorOperators.GT, 0));
+            case 3 -> x.lanewise(VectorOperators.TANH);
+            case 4 -> x.blend(0, x.compare(VectorOperators.LT, 0));
+            case 5 -> x.lanewise(VectorOperators.SIN);
+            default -> x.lanewise(VectorOperators.COS);
+        };
+    }
+
+    private static void floats(Phenotype phenotype, double[][] inputs, int from, int count, double[][] outputs) {
+        int numInputs = phenotype.numInputs, lanes = FLOATS.length();
+        int[] start = phenotype.start, source = phenotype.source;
+        float[] weight = phenotype.weight32;
+        float[][] block = BLOCKS.get();
+        if (block.length < phenotype.size) {
+            block = new float[phenotype.size][Phenotype.BLOCK];
+            BLOCKS.set(block);
+        }
+        for (int base = from, last = from + count; base < last; base += Phenotype.BLOCK) {
+            int len = min(Phenotype.BLOCK, last - base);
+            for (int p = 0; p < numInputs; p++) {
+                float[] column = block[p];
+                double[] input = inputs[p];
+                for (int s = 0; s < len; s++) column[s] = (float) input[base + s];
+            }
+            for (int q = numInputs; q < phenotype.size; q++) {
+                int kind = phenotype.kind[q];
+                float bias = phenotype.bias32[q];
+                for (int s = 0; s < len; s += lanes) {
+                    FloatVector sum = FloatVector.zero(FLOATS);
+                    for (int e = start[q], end = start[q + 1]; e < end; e++)
+                        sum = sum.add(FloatVector.fromArray(FLOATS, block[source[e]], s).mul(weight[e]));
+                    activate(kind, sum.add(bias)).intoArray(block[q], s);
+                }
+            }
+            for (int k = 0; k < phenotype.numOutputs; k++) {
+                int p = phenotype.outputs[k];
+                if (p < numInputs) {
+                    System.arraycopy(inputs[p], base, outputs[k], base, len);
+                    continue;
+                }
+                float[] column = block[p];
+                double[] output = outputs[k];
+                for (int s = 0; s < len; s++) output[base + s] = column[s];
+            }
+        }
+    }
+    private static FloatVector activate(int kind, FloatVector x) {
+        return switch (kind) {
+            case 0 -> FloatVector.broadcast(FLOATS, 1).div(x.mul(-4.9f).lanewise(VectorOperators.EXP).add(1));
+            case 1 -> x;
+            case 2 -> FloatVector.zero(FLOATS).blend(1, x.compare(VectorOperators.GT, 0));
+            case 3 -> x.lanewise(VectorOperators.TANH);
+            case 4 -> x.blend(0, x.compare(VectorOperators.LT, 0));
+            case 5 -> x.lanewise(VectorOperators.SIN);
+            default -> x.lanewise(VectorOperators.COS);
+        };
+    }
+}